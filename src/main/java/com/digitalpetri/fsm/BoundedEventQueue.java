@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, intrusive, multi-producer/single-consumer linked queue guarded by a lock, with one
+ * or more priority lanes sharing a single capacity.
+ *
+ * <p>Used instead of {@link MpscQueue} when an {@link EventQueueCapacity} is configured, since
+ * dropping the oldest node on overflow means producers must be able to remove from the head.
+ * Nodes are appended in chains, linked via {@link MpscQueue.Node#next}, that are kept contiguous.
+ * Only one thread at a time may call {@link #poll(int)}.
+ *
+ * @param <N> the node type.
+ */
+final class BoundedEventQueue<N extends MpscQueue.Node<N>> {
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notFull = lock.newCondition();
+
+  private final Lane<N>[] lanes;
+
+  /**
+   * The number of nodes in all lanes. Written only while holding {@link #lock}, read without it
+   * by {@link #isEmpty()}.
+   */
+  private volatile int size;
+
+  /**
+   * The number of producers waiting in {@link #offerBlocking}; accessed only while holding
+   * {@link #lock}.
+   */
+  private int waiters;
+
+  private final int capacity;
+
+  BoundedEventQueue(int capacity, int laneCount) {
+    this.capacity = capacity;
+
+    lanes = newLanes(laneCount);
+    for (int i = 0; i < laneCount; i++) {
+      lanes[i] = new Lane<>();
+    }
+  }
+
+  /**
+   * Append a chain of {@code count} nodes to {@code lane} if there is room for all of them.
+   *
+   * @return {@code true} if the chain was appended.
+   */
+  boolean tryOffer(int lane, N first, N last, int count) {
+    lock.lock();
+    try {
+      if (size + count > capacity) {
+        return false;
+      }
+
+      link(lane, first, last, count);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Append a chain of {@code count} nodes to {@code lane}, waiting uninterruptibly for room. A
+   * chain longer than the capacity waits for the queue to be empty.
+   */
+  void offerBlocking(int lane, N first, N last, int count) {
+    lock.lock();
+    try {
+      while (size > 0 && size + count > capacity) {
+        waiters++;
+        try {
+          notFull.awaitUninterruptibly();
+        } finally {
+          waiters--;
+        }
+      }
+
+      link(lane, first, last, count);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Append a chain of {@code count} nodes to {@code lane} regardless of the capacity.
+   */
+  void forceOffer(int lane, N first, N last, int count) {
+    lock.lock();
+    try {
+      link(lane, first, last, count);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Append a chain of {@code count} nodes to {@code lane}, then remove the oldest nodes of the
+   * lowest priority lanes until the queue is back within its capacity.
+   *
+   * @return the removed nodes, as a chain linked via {@link MpscQueue.Node#next}, or
+   *     {@code null} if none were removed.
+   */
+  N offerDroppingOldest(int lane, N first, N last, int count) {
+    lock.lock();
+    try {
+      link(lane, first, last, count);
+
+      int excess = size - capacity;
+      N dropped = null;
+      N droppedTail = null;
+
+      for (int i = lanes.length - 1; excess > 0; i--) {
+        Lane<N> l = lanes[i];
+
+        while (excess > 0 && l.head != null) {
+          N h = l.head;
+          l.head = h.next;
+          if (l.head == null) {
+            l.tail = null;
+          }
+          h.next = null;
+
+          if (droppedTail == null) {
+            dropped = h;
+          } else {
+            droppedTail.next = h;
+          }
+          droppedTail = h;
+
+          size--;
+          excess--;
+        }
+      }
+
+      return dropped;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Remove and return the node at the head of {@code lane}, or {@code null} if it's empty.
+   *
+   * @return the node at the head of {@code lane}, or {@code null} if it's empty.
+   */
+  N poll(int lane) {
+    if (size == 0) {
+      return null;
+    }
+
+    lock.lock();
+    try {
+      Lane<N> l = lanes[lane];
+      N h = l.head;
+
+      if (h == null) {
+        return null;
+      }
+
+      l.head = h.next;
+      if (l.head == null) {
+        l.tail = null;
+      }
+      h.next = null;
+      size--;
+
+      if (waiters > 0) {
+        // a waiting chain may need more room than one node, so each re-checks for itself
+        notFull.signalAll();
+      }
+
+      return h;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Check whether all lanes of the queue are empty.
+   *
+   * @return {@code true} if all lanes of the queue are empty.
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  private void link(int lane, N first, N last, int count) {
+    Lane<N> l = lanes[lane];
+    last.next = null;
+
+    if (l.tail == null) {
+      l.head = first;
+    } else {
+      l.tail.next = first;
+    }
+
+    l.tail = last;
+    size += count;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <N> Lane<N>[] newLanes(int laneCount) {
+    return (Lane<N>[]) new Lane<?>[laneCount];
+  }
+
+  private static final class Lane<N> {
+    N head;
+    N tail;
+  }
+
+}
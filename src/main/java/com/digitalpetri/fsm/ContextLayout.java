@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns the {@link FsmContext.Key}s known when a {@link StrictMachine} is defined a fixed slot
+ * in an array, so their values are stored and looked up by index instead of in a map.
+ *
+ * <p>{@link FsmContext.LongKey} and {@link FsmContext.IntKey} values are stored unboxed in slots
+ * of a separate {@code long[]}. Values of keys without a slot are kept in a map. A layout is
+ * immutable and may be shared by every machine built from the same definition.
+ *
+ * <p>Slots are numbered per layout. Each key caches the {@link Slot} it was last looked up with,
+ * including the absence of one, so a key used with a single layout is only looked up once.
+ */
+final class ContextLayout {
+
+  private static final ContextLayout EMPTY = new ContextLayout(List.of(), List.of(), List.of());
+
+  private final Map<FsmContext.Key<?>, Slot> slots = new HashMap<>();
+  private final Map<Object, Slot> primitiveSlots = new HashMap<>();
+  private final Slot noSlot = new Slot(this, -1);
+
+  private final int slotCount;
+  private final int primitiveSlotCount;
+
+  private ContextLayout(
+      Collection<FsmContext.Key<?>> keys,
+      Collection<FsmContext.LongKey> longKeys,
+      Collection<FsmContext.IntKey> intKeys
+  ) {
+
+    for (FsmContext.Key<?> key : keys) {
+      slots.computeIfAbsent(key, k -> new Slot(this, slots.size()));
+    }
+    for (FsmContext.LongKey key : longKeys) {
+      primitiveSlots.computeIfAbsent(key, k -> new Slot(this, primitiveSlots.size()));
+    }
+    for (FsmContext.IntKey key : intKeys) {
+      primitiveSlots.computeIfAbsent(key, k -> new Slot(this, primitiveSlots.size()));
+    }
+
+    this.slotCount = slots.size();
+    this.primitiveSlotCount = primitiveSlots.size();
+  }
+
+  /**
+   * Get the number of slots for {@link FsmContext.Key} values.
+   *
+   * @return the number of slots for {@link FsmContext.Key} values.
+   */
+  int slotCount() {
+    return slotCount;
+  }
+
+  /**
+   * Get the number of slots for {@link FsmContext.LongKey} and {@link FsmContext.IntKey} values,
+   * which are stored unboxed in a {@code long[]}.
+   *
+   * @return the number of slots for primitive values.
+   */
+  int primitiveSlotCount() {
+    return primitiveSlotCount;
+  }
+
+  /**
+   * Get the slot assigned to {@code key}, or -1 if it has none.
+   *
+   * @param key the {@link FsmContext.Key}.
+   * @return the slot assigned to {@code key}, or -1 if it has none.
+   */
+  int slot(FsmContext.Key<?> key) {
+    return slotCount == 0 ? -1 : key.slotIn(this);
+  }
+
+  int slot(FsmContext.LongKey key) {
+    return primitiveSlotCount == 0 ? -1 : key.slotIn(this);
+  }
+
+  int slot(FsmContext.IntKey key) {
+    return primitiveSlotCount == 0 ? -1 : key.slotIn(this);
+  }
+
+  /**
+   * Find the {@link Slot} assigned to {@code key}; called by a key whose cached Slot belongs to
+   * another layout.
+   *
+   * @param key the {@link FsmContext.Key}.
+   * @return the {@link Slot} assigned to {@code key}, with index -1 if it has none.
+   */
+  Slot findSlot(FsmContext.Key<?> key) {
+    return slots.getOrDefault(key, noSlot);
+  }
+
+  Slot findSlot(FsmContext.LongKey key) {
+    return primitiveSlots.getOrDefault(key, noSlot);
+  }
+
+  Slot findSlot(FsmContext.IntKey key) {
+    return primitiveSlots.getOrDefault(key, noSlot);
+  }
+
+  /**
+   * Create a layout assigning a slot to each distinct key in {@code keys}, {@code longKeys}, and
+   * {@code intKeys}.
+   *
+   * @param keys the {@link FsmContext.Key}s to assign slots to.
+   * @param longKeys the {@link FsmContext.LongKey}s to assign slots to.
+   * @param intKeys the {@link FsmContext.IntKey}s to assign slots to.
+   * @return a layout assigning a slot to each distinct key.
+   */
+  static ContextLayout of(
+      Collection<FsmContext.Key<?>> keys,
+      Collection<FsmContext.LongKey> longKeys,
+      Collection<FsmContext.IntKey> intKeys
+  ) {
+
+    if (keys.isEmpty() && longKeys.isEmpty() && intKeys.isEmpty()) {
+      return EMPTY;
+    }
+
+    return new ContextLayout(keys, longKeys, intKeys);
+  }
+
+  /**
+   * The slot assigned to a key by a layout, or the absence of one. Immutable, so keys may cache
+   * it without synchronization.
+   */
+  static final class Slot {
+
+    final ContextLayout layout;
+    final int index;
+
+    Slot(ContextLayout layout, int index) {
+      this.layout = layout;
+      this.index = index;
+    }
+
+  }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.time.Duration;
+import java.util.StringJoiner;
+
+/**
+ * Limits on how many queued events a {@link StrictMachine} evaluates per task submitted to its
+ * executor.
+ *
+ * <p>When more than one event may be evaluated per task, queued events are evaluated
+ * back-to-back while holding the lock. Callback timing is the same as without batching: the lock
+ * is released to notify an event's state callback or completion, which happens after that event
+ * is evaluated and before the next one is. Once a limit is reached the task yields, resubmitting
+ * itself to the executor if events remain, so other machines sharing the executor get a turn.
+ */
+public final class EventBatching {
+
+  private static final EventBatching NONE = new EventBatching(1, 0L);
+
+  private final int maxEvents;
+  private final long maxNanos;
+
+  private EventBatching(int maxEvents, long maxNanos) {
+    this.maxEvents = maxEvents;
+    this.maxNanos = maxNanos;
+  }
+
+  /**
+   * Get the maximum number of events evaluated per task.
+   *
+   * @return the maximum number of events evaluated per task.
+   */
+  public int maxEvents() {
+    return maxEvents;
+  }
+
+  /**
+   * Get the time budget per task, in nanoseconds, or 0 if there is none.
+   *
+   * @return the time budget per task, in nanoseconds, or 0 if there is none.
+   */
+  public long maxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * Check whether more than one event may be evaluated per task.
+   *
+   * @return {@code true} if more than one event may be evaluated per task.
+   */
+  public boolean isEnabled() {
+    return maxEvents > 1;
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", EventBatching.class.getSimpleName() + "[", "]")
+        .add("maxEvents=" + maxEvents)
+        .add("maxNanos=" + maxNanos)
+        .toString();
+  }
+
+  /**
+   * Evaluate one event per task.
+   *
+   * @return an {@link EventBatching} that evaluates one event per task.
+   */
+  public static EventBatching none() {
+    return NONE;
+  }
+
+  /**
+   * Evaluate up to {@code maxEvents} queued events per task.
+   *
+   * @param maxEvents the maximum number of events evaluated per task.
+   * @return an {@link EventBatching} with the given limit.
+   */
+  public static EventBatching of(int maxEvents) {
+    return of(maxEvents, Duration.ZERO);
+  }
+
+  /**
+   * Evaluate up to {@code maxEvents} queued events per task, yielding early once
+   * {@code maxTime} has elapsed.
+   *
+   * <p>The time budget is checked after each event, so a task may exceed it by the time it takes
+   * to evaluate one event.
+   *
+   * @param maxEvents the maximum number of events evaluated per task.
+   * @param maxTime the time budget per task, or {@link Duration#ZERO} for none.
+   * @return an {@link EventBatching} with the given limits.
+   */
+  public static EventBatching of(int maxEvents, Duration maxTime) {
+    if (maxEvents < 1) {
+      throw new IllegalArgumentException("maxEvents must be >= 1: " + maxEvents);
+    }
+    if (maxTime.isNegative()) {
+      throw new IllegalArgumentException("maxTime must not be negative: " + maxTime);
+    }
+
+    return new EventBatching(maxEvents, maxTime.toNanos());
+  }
+
+}
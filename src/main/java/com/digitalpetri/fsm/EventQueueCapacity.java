@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.util.StringJoiner;
+
+/**
+ * The capacity of a {@link StrictMachine}'s queue of events waiting to be evaluated, and the
+ * {@link OverflowPolicy} applied when an event is fired while it's full.
+ *
+ * <p>The capacity bounds all queued events together, whatever their priority lane. Shelved events
+ * re-injected by {@link FsmContext#processShelvedEvents()} were already accepted once and don't
+ * count against it.
+ */
+public final class EventQueueCapacity {
+
+  private static final EventQueueCapacity UNBOUNDED =
+      new EventQueueCapacity(Integer.MAX_VALUE, OverflowPolicy.BLOCK);
+
+  private final int capacity;
+  private final OverflowPolicy overflowPolicy;
+
+  private EventQueueCapacity(int capacity, OverflowPolicy overflowPolicy) {
+    this.capacity = capacity;
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  /**
+   * Get the maximum number of queued events, or {@link Integer#MAX_VALUE} if unbounded.
+   *
+   * @return the maximum number of queued events.
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the {@link OverflowPolicy} applied when an event is fired while the queue is full.
+   *
+   * @return the {@link OverflowPolicy}.
+   */
+  public OverflowPolicy overflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Check whether the queue is bounded.
+   *
+   * @return {@code true} if the queue is bounded.
+   */
+  public boolean isBounded() {
+    return this != UNBOUNDED;
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", EventQueueCapacity.class.getSimpleName() + "[", "]")
+        .add("capacity=" + capacity)
+        .add("overflowPolicy=" + overflowPolicy)
+        .toString();
+  }
+
+  /**
+   * An unbounded queue; events are always accepted.
+   *
+   * @return an unbounded {@link EventQueueCapacity}.
+   */
+  public static EventQueueCapacity unbounded() {
+    return UNBOUNDED;
+  }
+
+  /**
+   * A queue holding at most {@code capacity} events, applying {@code overflowPolicy} to events
+   * fired while it's full.
+   *
+   * @param capacity the maximum number of queued events.
+   * @param overflowPolicy the {@link OverflowPolicy} applied while the queue is full.
+   * @return a bounded {@link EventQueueCapacity}.
+   */
+  public static EventQueueCapacity of(int capacity, OverflowPolicy overflowPolicy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+    }
+
+    return new EventQueueCapacity(capacity, overflowPolicy);
+  }
+
+}
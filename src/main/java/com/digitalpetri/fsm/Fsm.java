@@ -10,6 +10,14 @@
 
 package com.digitalpetri.fsm;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -18,10 +26,27 @@ public interface Fsm<S, E> {
   /**
    * Get the current state of the FSM.
    *
+   * <p>Does not wait for a transition in progress; the state returned may be one whose
+   * TransitionActions are still executing.
+   *
    * @return the current state of the FSM.
    */
   S getState();
 
+  /**
+   * Get the current state of the FSM together with the number of events evaluated so far.
+   *
+   * <p>Like {@link #getState()}, this does not wait for a transition in progress.
+   *
+   * <p>The default implementation doesn't count evaluated events and reports a sequence of -1;
+   * {@link StrictMachine} reports the actual count.
+   *
+   * @return a {@link StateSnapshot} of the current state.
+   */
+  default StateSnapshot<S> getStateSnapshot() {
+    return new StateSnapshot<>(getState(), -1L);
+  }
+
   /**
    * Fire an event for the FSM to evaluate.
    *
@@ -29,8 +54,12 @@ public interface Fsm<S, E> {
    * subsequent call to {@link #getState()} reflects a state arrived at via evaluation of this
    * event.
    *
+   * <p>If the FSM's event queue is bounded and full, its {@link OverflowPolicy} applies: this may
+   * block, throw {@link IllegalStateException}, or drop an event.
+   *
    * @param event the event to evaluate.
    * @see #fireEvent(Object, Consumer)
+   * @see #tryFireEvent(Object)
    */
   void fireEvent(E event);
 
@@ -46,16 +75,188 @@ public interface Fsm<S, E> {
    */
   void fireEvent(E event, Consumer<S> stateConsumer);
 
+  /**
+   * Fire an event for the FSM to evaluate if it can be queued without blocking.
+   *
+   * <p>Returns {@code false} instead of blocking or throwing if the FSM's event queue is bounded
+   * and full, unless its {@link OverflowPolicy} drops the oldest event to make room.
+   *
+   * @param event the event to evaluate.
+   * @return {@code true} if {@code event} was queued.
+   */
+  default boolean tryFireEvent(E event) {
+    fireEvent(event);
+
+    return true;
+  }
+
+  /**
+   * Fire an event for the FSM to evaluate once {@code delay} has elapsed.
+   *
+   * <p>The delay is tracked by the {@link HashedWheelTimer#shared() shared timer}, so the event
+   * may be fired up to one tick late. When it is, it's queued as if by
+   * {@link #tryFireEvent(Object)}: the timer never blocks, and the event is dropped if the FSM's
+   * event queue is bounded and full, which {@link StrictMachine} logs as a warning.
+   *
+   * @param event the event to evaluate.
+   * @param delay the delay after which to fire {@code event}.
+   * @return a {@link Timeout} that can cancel the event before it's fired.
+   */
+  default Timeout fireEventAfter(E event, Duration delay) {
+    return HashedWheelTimer.shared().newTimeout(() -> tryFireEvent(event), delay);
+  }
+
+  /**
+   * Fire a batch of events for the FSM to evaluate, in order.
+   *
+   * <p>The batch is enqueued atomically if {@link #fireEvents(List, Consumer)} is: events fired
+   * concurrently by other threads are evaluated either before or after the whole batch, never in
+   * between its events.
+   *
+   * @param events the events to evaluate.
+   * @see #fireEvents(List, Consumer)
+   */
+  default void fireEvents(List<E> events) {
+    fireEvents(events, null);
+  }
+
+  /**
+   * Fire a batch of events for the FSM to evaluate, in order.
+   *
+   * @param events the events to evaluate.
+   * @see #fireEvents(List)
+   */
+  @SuppressWarnings("unchecked")
+  default void fireEvents(E... events) {
+    fireEvents(Arrays.asList(events), null);
+  }
+
+  /**
+   * Fire a batch of events for the FSM to evaluate, in order, providing a callback that will be
+   * invoked when the last of them is evaluated.
+   *
+   * <p>{@link StrictMachine} enqueues the batch atomically: events fired concurrently by other
+   * threads are evaluated either before or after the whole batch, never in between its events.
+   *
+   * <p>This callback may occur asynchronously. If {@code events} is empty it is invoked
+   * immediately with the current state.
+   *
+   * <p>The default implementation fires each event in turn with {@link #fireEvent(Object)}, so it
+   * doesn't enqueue the batch atomically; {@link StrictMachine} does.
+   *
+   * @param events the events to evaluate.
+   * @param stateConsumer the callback that will receive the state transitioned to via
+   *     evaluation of the last event in {@code events}, or {@code null} for none.
+   */
+  default void fireEvents(List<E> events, Consumer<S> stateConsumer) {
+    int last = events.size() - 1;
+
+    if (last < 0) {
+      if (stateConsumer != null) {
+        stateConsumer.accept(getState());
+      }
+      return;
+    }
+
+    for (int i = 0; i < last; i++) {
+      fireEvent(events.get(i));
+    }
+
+    if (stateConsumer != null) {
+      fireEvent(events.get(last), stateConsumer);
+    } else {
+      fireEvent(events.get(last));
+    }
+  }
+
   /**
    * Fire an event for the FSM to evaluate and block waiting until the state transitioned to as a
    * result of evaluating {@code event} is available.
    *
+   * <p>With a bounded event queue whose policy is {@link OverflowPolicy#BLOCK} this first waits,
+   * uninterruptibly, for room in the queue.
+   *
    * @param event the event to evaluate.
    * @return the state transitioned to as a result of evaluating {@code event}.
    * @throws InterruptedException if interrupted while blocking.
+   * @throws java.util.concurrent.CancellationException if {@code event} was dropped from a full
+   *     event queue, see {@link OverflowPolicy#DROP_OLDEST} and
+   *     {@link OverflowPolicy#DROP_NEWEST}.
+   * @throws IllegalStateException if {@code event} was rejected by a full event queue, see
+   *     {@link OverflowPolicy#REJECT}.
    */
   S fireEventBlocking(E event) throws InterruptedException;
 
+  /**
+   * Fire an event for the FSM to evaluate and block waiting, at most {@code timeout}, until the
+   * state transitioned to as a result of evaluating {@code event} is available.
+   *
+   * <p>The event remains queued for evaluation if the timeout elapses. With a bounded event queue
+   * whose policy is {@link OverflowPolicy#BLOCK}, waiting for room in the queue is not limited by
+   * {@code timeout}.
+   *
+   * @param event the event to evaluate.
+   * @param timeout the maximum time to wait.
+   * @return the state transitioned to as a result of evaluating {@code event}.
+   * @throws InterruptedException if interrupted while blocking.
+   * @throws TimeoutException if {@code timeout} elapsed before {@code event} was evaluated.
+   * @throws java.util.concurrent.CancellationException if {@code event} was dropped from a full
+   *     event queue, see {@link OverflowPolicy#DROP_OLDEST} and
+   *     {@link OverflowPolicy#DROP_NEWEST}.
+   * @throws IllegalStateException if {@code event} was rejected by a full event queue, see
+   *     {@link OverflowPolicy#REJECT}.
+   */
+  default S fireEventBlocking(E event, Duration timeout)
+      throws InterruptedException, TimeoutException {
+
+    try {
+      return fireEventAsync(event).toCompletableFuture()
+          .get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      // not expected: the completion is either completed normally or cancelled
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Fire an event for the FSM to evaluate, returning a {@link CompletionStage} that completes with
+   * the state transitioned to as a result of evaluating {@code event}.
+   *
+   * <p>The stage may complete on the thread evaluating events; dependent stages that block or run
+   * long should use one of the {@code *Async} variants.
+   *
+   * <p>The stage is cancelled if the event is dropped by the {@link OverflowPolicy} of a bounded
+   * event queue.
+   *
+   * @param event the event to evaluate.
+   * @return a {@link CompletionStage} that completes with the state transitioned to as a result of
+   *     evaluating {@code event}.
+   */
+  default CompletionStage<S> fireEventAsync(E event) {
+    var completion = new CompletableFuture<S>();
+
+    fireEvent(event, completion::complete);
+
+    return completion;
+  }
+
+  /**
+   * Fire a batch of events for the FSM to evaluate, in order, returning a {@link CompletionStage}
+   * that completes with the state transitioned to as a result of evaluating the last of them.
+   *
+   * @param events the events to evaluate.
+   * @return a {@link CompletionStage} that completes with the state transitioned to as a result of
+   *     evaluating the last event in {@code events}.
+   * @see #fireEvents(List, Consumer)
+   */
+  default CompletionStage<S> fireEventsAsync(List<E> events) {
+    var completion = new CompletableFuture<S>();
+
+    fireEvents(events, completion::complete);
+
+    return completion;
+  }
+
   /**
    * Provides safe access to the {@link FsmContext} in order to retrieve a value from it.
    *
@@ -65,6 +266,29 @@ public interface Fsm<S, E> {
    */
   <T> T getFromContext(Function<FsmContext<S, E>, T> get);
 
+  /**
+   * Provides read-only access to the context in order to retrieve a value from it.
+   *
+   * <p>Unlike {@link #getFromContext(Function)}, this does not take exclusive access: readers run
+   * in parallel with each other, though not while an event is being evaluated or the context is
+   * being modified.
+   *
+   * <p>{@code read} is first applied optimistically, without locking, and applied again under a
+   * read lock if the context was modified meanwhile, so it may be called more than once and should
+   * have no side effects.
+   *
+   * <p>The default implementation applies {@code read} once, with the exclusive access of
+   * {@link #getFromContext(Function)}; {@link StrictMachine} implements the shared access
+   * described above.
+   *
+   * @param read the Function provided read-only access to the context.
+   * @param <T> the type of the value being retrieved.
+   * @return a value from the context.
+   */
+  default <T> T readContext(Function<ReadOnlyFsmContext<S>, T> read) {
+    return getFromContext(read::apply);
+  }
+
   /**
    * Provides safe access to the {@link FsmContext}.
    *
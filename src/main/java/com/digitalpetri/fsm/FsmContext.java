@@ -10,16 +10,18 @@
 
 package com.digitalpetri.fsm;
 
+import java.time.Duration;
 import java.util.Objects;
 import java.util.StringJoiner;
 
-public interface FsmContext<S, E> {
+public interface FsmContext<S, E> extends ReadOnlyFsmContext<S> {
 
   /**
    * Get the current state of the FSM.
    *
    * @return the current state of the FSM.
    */
+  @Override
   S currentState();
 
   /**
@@ -29,6 +31,36 @@ public interface FsmContext<S, E> {
    */
   void fireEvent(E event);
 
+  /**
+   * Fire an event to be evaluated against the current state of the {@link Fsm} if it can be
+   * queued without blocking.
+   *
+   * @param event the event to be evaluated.
+   * @return {@code true} if {@code event} was queued.
+   * @see Fsm#tryFireEvent(Object)
+   */
+  default boolean tryFireEvent(E event) {
+    fireEvent(event);
+
+    return true;
+  }
+
+  /**
+   * Fire an event to be evaluated against the state of the {@link Fsm} once {@code delay} has
+   * elapsed.
+   *
+   * <p>The event is fired from the shared timer thread as if by {@link #tryFireEvent(Object)}, so
+   * the timer never blocks.
+   *
+   * @param event the event to be evaluated.
+   * @param delay the delay after which to fire {@code event}.
+   * @return a {@link Timeout} that can cancel the event before it's fired.
+   * @see Fsm#fireEventAfter(Object, Duration)
+   */
+  default Timeout fireEventAfter(E event, Duration delay) {
+    return HashedWheelTimer.shared().newTimeout(() -> tryFireEvent(event), delay);
+  }
+
   /**
    * Shelve an event to be evaluated at some later time.
    *
@@ -52,6 +84,7 @@ public interface FsmContext<S, E> {
    * @param key the {@link Key}.
    * @return the value identified by {@code key}, or {@code null} if it does not exist.
    */
+  @Override
   Object get(FsmContext.Key<?> key);
 
   /**
@@ -71,21 +104,132 @@ public interface FsmContext<S, E> {
    */
   void set(FsmContext.Key<?> key, Object value);
 
+  /**
+   * Set the {@code long} value identified by {@code key}.
+   *
+   * <p>The default implementation stores the value boxed, via {@link #set(Key, Object)}.
+   *
+   * @param key the {@link LongKey}.
+   * @param value the value.
+   */
+  default void setLong(LongKey key, long value) {
+    set(key.boxedKey(), value);
+  }
+
+  /**
+   * Set the {@code int} value identified by {@code key}.
+   *
+   * <p>The default implementation stores the value boxed, via {@link #set(Key, Object)}.
+   *
+   * @param key the {@link IntKey}.
+   * @param value the value.
+   */
+  default void setInt(IntKey key, int value) {
+    set(key.boxedKey(), value);
+  }
+
+  /**
+   * Atomically add {@code delta} to the {@code long} value identified by {@code key}.
+   *
+   * <p>The default implementation reads and then sets the value, so it's only atomic as long as
+   * access to the context is exclusive, as it is within {@link Fsm#withContext(
+   * java.util.function.Consumer)}.
+   *
+   * @param key the {@link LongKey}.
+   * @param delta the value to add.
+   * @return the updated value.
+   */
+  default long addAndGet(LongKey key, long delta) {
+    long value = getLong(key) + delta;
+    setLong(key, value);
+    return value;
+  }
+
+  /**
+   * Atomically add {@code delta} to the {@code int} value identified by {@code key}.
+   *
+   * <p>The default implementation reads and then sets the value, so it's only atomic as long as
+   * access to the context is exclusive, as it is within {@link Fsm#withContext(
+   * java.util.function.Consumer)}.
+   *
+   * @param key the {@link IntKey}.
+   * @param delta the value to add.
+   * @return the updated value.
+   */
+  default int addAndGet(IntKey key, int delta) {
+    int value = getInt(key) + delta;
+    setInt(key, value);
+    return value;
+  }
+
+  /**
+   * Atomically set the {@code long} value identified by {@code key} to {@code update} if it is
+   * currently {@code expect}.
+   *
+   * <p>The default implementation reads and then sets the value, so it's only atomic as long as
+   * access to the context is exclusive, as it is within {@link Fsm#withContext(
+   * java.util.function.Consumer)}.
+   *
+   * @param key the {@link LongKey}.
+   * @param expect the expected value.
+   * @param update the new value.
+   * @return {@code true} if the value was updated.
+   */
+  default boolean compareAndSet(LongKey key, long expect, long update) {
+    if (getLong(key) != expect) {
+      return false;
+    }
+
+    setLong(key, update);
+    return true;
+  }
+
+  /**
+   * Atomically set the {@code int} value identified by {@code key} to {@code update} if it is
+   * currently {@code expect}.
+   *
+   * <p>The default implementation reads and then sets the value, so it's only atomic as long as
+   * access to the context is exclusive, as it is within {@link Fsm#withContext(
+   * java.util.function.Consumer)}.
+   *
+   * @param key the {@link IntKey}.
+   * @param expect the expected value.
+   * @param update the new value.
+   * @return {@code true} if the value was updated.
+   */
+  default boolean compareAndSet(IntKey key, int expect, int update) {
+    if (getInt(key) != expect) {
+      return false;
+    }
+
+    setInt(key, update);
+    return true;
+  }
+
   /**
    * Get the user-configurable context associated with this FSM instance.
    *
    * @return the user-configurable context associated with this FSM instance.
    */
+  @Override
   Object getUserContext();
 
   final class Key<T> {
 
     private final String name;
     private final Class<T> type;
+    private final int hashCode;
+
+    /**
+     * This key's slot in the {@link ContextLayout} it was last looked up in. Racy caching of an
+     * immutable value.
+     */
+    private ContextLayout.Slot slot;
 
     public Key(String name, Class<T> type) {
       this.name = name;
       this.type = type;
+      this.hashCode = Objects.hash(name, type);
     }
 
     public String name() {
@@ -96,7 +240,7 @@ public interface FsmContext<S, E> {
       return type;
     }
 
-    public T get(FsmContext<?, ?> context) {
+    public T get(ReadOnlyFsmContext<?> context) {
       Object value = context.get(this);
 
       return value != null ? type.cast(value) : null;
@@ -127,7 +271,24 @@ public interface FsmContext<S, E> {
 
     @Override
     public int hashCode() {
-      return Objects.hash(name, type);
+      return hashCode;
+    }
+
+    /**
+     * Get this key's slot in {@code layout}, looking it up only if the cached slot belongs to
+     * another layout.
+     *
+     * @param layout the {@link ContextLayout}.
+     * @return this key's slot in {@code layout}, or -1 if it has none.
+     */
+    int slotIn(ContextLayout layout) {
+      ContextLayout.Slot s = slot;
+
+      if (s == null || s.layout != layout) {
+        s = slot = layout.findSlot(this);
+      }
+
+      return s.index;
     }
 
     @Override
@@ -140,4 +301,196 @@ public interface FsmContext<S, E> {
 
   }
 
+  /**
+   * Identifies a {@code long} value in the context, stored unboxed.
+   *
+   * <p>Values that have never been set read as {@code 0}.
+   */
+  final class LongKey {
+
+    private final String name;
+    private final int hashCode;
+
+    /**
+     * This key's slot in the {@link ContextLayout} it was last looked up in. Racy caching of an
+     * immutable value.
+     */
+    private ContextLayout.Slot slot;
+
+    /**
+     * The boxed key used by the default methods of {@link FsmContext}, allocated on first use.
+     */
+    private Key<Long> boxedKey;
+
+    public LongKey(String name) {
+      this.name = name;
+      this.hashCode = Objects.hash(LongKey.class, name);
+    }
+
+    public String name() {
+      return name;
+    }
+
+    public long get(ReadOnlyFsmContext<?> context) {
+      return context.getLong(this);
+    }
+
+    public void set(FsmContext<?, ?> context, long value) {
+      context.setLong(this, value);
+    }
+
+    public long addAndGet(FsmContext<?, ?> context, long delta) {
+      return context.addAndGet(this, delta);
+    }
+
+    public boolean compareAndSet(FsmContext<?, ?> context, long expect, long update) {
+      return context.compareAndSet(this, expect, update);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      LongKey key = (LongKey) o;
+      return Objects.equals(name, key.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    /**
+     * Get the key this key's value is stored under by an {@link FsmContext} that doesn't store
+     * {@code long} values unboxed. Its name is qualified, so it's never equal to a user's key.
+     */
+    Key<Long> boxedKey() {
+      Key<Long> k = boxedKey;
+
+      if (k == null) {
+        k = boxedKey = new Key<>(LongKey.class.getName() + ":" + name, Long.class);
+      }
+
+      return k;
+    }
+
+    int slotIn(ContextLayout layout) {
+      ContextLayout.Slot s = slot;
+
+      if (s == null || s.layout != layout) {
+        s = slot = layout.findSlot(this);
+      }
+
+      return s.index;
+    }
+
+    @Override
+    public String toString() {
+      return new StringJoiner(", ", LongKey.class.getSimpleName() + "[", "]")
+          .add("name='" + name + "'")
+          .toString();
+    }
+
+  }
+
+  /**
+   * Identifies an {@code int} value in the context, stored unboxed.
+   *
+   * <p>Values that have never been set read as {@code 0}.
+   */
+  final class IntKey {
+
+    private final String name;
+    private final int hashCode;
+
+    /**
+     * This key's slot in the {@link ContextLayout} it was last looked up in. Racy caching of an
+     * immutable value.
+     */
+    private ContextLayout.Slot slot;
+
+    /**
+     * The boxed key used by the default methods of {@link FsmContext}, allocated on first use.
+     */
+    private Key<Integer> boxedKey;
+
+    public IntKey(String name) {
+      this.name = name;
+      this.hashCode = Objects.hash(IntKey.class, name);
+    }
+
+    public String name() {
+      return name;
+    }
+
+    public int get(ReadOnlyFsmContext<?> context) {
+      return context.getInt(this);
+    }
+
+    public void set(FsmContext<?, ?> context, int value) {
+      context.setInt(this, value);
+    }
+
+    public int addAndGet(FsmContext<?, ?> context, int delta) {
+      return context.addAndGet(this, delta);
+    }
+
+    public boolean compareAndSet(FsmContext<?, ?> context, int expect, int update) {
+      return context.compareAndSet(this, expect, update);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      IntKey key = (IntKey) o;
+      return Objects.equals(name, key.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    /**
+     * Get the key this key's value is stored under by an {@link FsmContext} that doesn't store
+     * {@code int} values unboxed. Its name is qualified, so it's never equal to a user's key.
+     */
+    Key<Integer> boxedKey() {
+      Key<Integer> k = boxedKey;
+
+      if (k == null) {
+        k = boxedKey = new Key<>(IntKey.class.getName() + ":" + name, Integer.class);
+      }
+
+      return k;
+    }
+
+    int slotIn(ContextLayout layout) {
+      ContextLayout.Slot s = slot;
+
+      if (s == null || s.layout != layout) {
+        s = slot = layout.findSlot(this);
+      }
+
+      return s.index;
+    }
+
+    @Override
+    public String toString() {
+      return new StringJoiner(", ", IntKey.class.getSimpleName() + "[", "]")
+          .add("name='" + name + "'")
+          .toString();
+    }
+
+  }
+
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import com.digitalpetri.fsm.dsl.Action;
+import com.digitalpetri.fsm.dsl.ActionProxy;
+import com.digitalpetri.fsm.dsl.TransitionAction;
+import com.digitalpetri.fsm.dsl.TransitionActionResolver;
+import com.digitalpetri.fsm.dsl.TransitionResolver;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compiled, immutable definition of a state machine that creates lightweight {@link Fsm}
+ * instances.
+ *
+ * <p>Every instance created by a definition shares its compiled transitions and transition
+ * actions, its logger, and its configuration; an instance only holds its own state, context,
+ * and event queue. Definitions are safe to share between threads.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+public final class FsmDefinition<S, E> {
+
+  final Logger logger;
+  final Map<String, String> mdc;
+  final EventBatching eventBatching;
+  final EventQueueCapacity eventQueueCapacity;
+  final Function<? super E, ?> coalescingKey;
+  final int priorityLanes;
+  final ToIntFunction<? super E> laneClassifier;
+  final Map<S, List<StateTimeout<S, E>>> stateTimeouts;
+  final Executor actionExecutor;
+  final Executor blockingActionExecutor;
+  final ContextLayout contextLayout;
+  final ActionProxy<S, E> actionProxy;
+  final TransitionResolver<S, E> transitionResolver;
+  final TransitionActionResolver<S, E> transitionActionResolver;
+
+  /**
+   * The {@link Action}s passed to {@link #actionProxy}, adapted once per
+   * {@link TransitionAction}.
+   */
+  final Map<TransitionAction<S, E>, Action<S, E>> proxiedActions = new ConcurrentHashMap<>();
+
+  private final Supplier<Executor> executorSupplier;
+  private final Object userContext;
+
+  /**
+   * Create a new FsmDefinition.
+   *
+   * <p>Not public: the compiled resolvers are implementation details, so definitions are only
+   * built through {@link com.digitalpetri.fsm.dsl.FsmBuilder#buildDefinition(Class)}.
+   *
+   * @param loggerName the name of the logger shared by every instance.
+   * @param mdc MDC values set while logging.
+   * @param executorSupplier supplies the {@link Executor} for each new instance.
+   * @param eventBatching the {@link EventBatching} limits for every instance.
+   * @param eventQueueCapacity the {@link EventQueueCapacity} of every instance.
+   * @param coalescingKey derives the key by which a fired event is coalesced with a queued one,
+   *     or {@code null} if it isn't; {@code null} to coalesce no events.
+   * @param priorityLanes the number of priority lanes.
+   * @param laneClassifier assigns each event its priority lane, 0 being the highest priority;
+   *     {@code null} if there is only one lane.
+   * @param stateTimeouts the {@link StateTimeout}s scheduled when an instance enters a state.
+   * @param actionExecutor the {@link Executor} pipelined actions are executed on, or
+   *     {@code null} to execute actions as events are evaluated.
+   * @param blockingActionExecutor the {@link Executor} actions tagged
+   *     {@link com.digitalpetri.fsm.dsl.ExecutionTag#BLOCKING} are executed on, or {@code null}
+   *     to execute them inline.
+   * @param contextKeys the {@link FsmContext.Key}s given a slot in the {@link ContextLayout}.
+   * @param longContextKeys the {@link FsmContext.LongKey}s given an unboxed slot.
+   * @param intContextKeys the {@link FsmContext.IntKey}s given an unboxed slot.
+   * @param userContext the user context of instances created without one.
+   * @param actionProxy the {@link ActionProxy}, or {@code null} for none.
+   * @param transitionResolver the compiled transitions.
+   * @param transitionActionResolver the compiled transition actions.
+   */
+  FsmDefinition(
+      String loggerName,
+      Map<String, String> mdc,
+      Supplier<Executor> executorSupplier,
+      EventBatching eventBatching,
+      EventQueueCapacity eventQueueCapacity,
+      Function<? super E, ?> coalescingKey,
+      int priorityLanes,
+      ToIntFunction<? super E> laneClassifier,
+      List<StateTimeout<S, E>> stateTimeouts,
+      Executor actionExecutor,
+      Executor blockingActionExecutor,
+      Collection<FsmContext.Key<?>> contextKeys,
+      Collection<FsmContext.LongKey> longContextKeys,
+      Collection<FsmContext.IntKey> intContextKeys,
+      Object userContext,
+      ActionProxy<S, E> actionProxy,
+      TransitionResolver<S, E> transitionResolver,
+      TransitionActionResolver<S, E> transitionActionResolver
+  ) {
+
+    this.logger = LoggerFactory.getLogger(loggerName);
+    this.mdc = mdc;
+    this.executorSupplier = executorSupplier;
+    this.eventBatching = eventBatching;
+    this.eventQueueCapacity = eventQueueCapacity;
+    this.coalescingKey = coalescingKey;
+    this.priorityLanes = priorityLanes;
+    this.laneClassifier = laneClassifier;
+    this.stateTimeouts = new HashMap<>();
+    this.actionExecutor = actionExecutor;
+    this.blockingActionExecutor = blockingActionExecutor;
+    this.contextLayout = ContextLayout.of(contextKeys, longContextKeys, intContextKeys);
+    this.userContext = userContext;
+    this.actionProxy = actionProxy;
+    this.transitionResolver = transitionResolver;
+    this.transitionActionResolver = transitionActionResolver;
+
+    for (StateTimeout<S, E> stateTimeout : stateTimeouts) {
+      this.stateTimeouts
+          .computeIfAbsent(stateTimeout.state(), s -> new ArrayList<>())
+          .add(stateTimeout);
+    }
+  }
+
+  /**
+   * Create a new {@link Fsm} instance starting in {@code initialState}, with the user context
+   * this definition was created with.
+   *
+   * @param initialState the initial state.
+   * @return a new {@link Fsm} instance.
+   */
+  public Fsm<S, E> newInstance(S initialState) {
+    return newInstance(initialState, userContext);
+  }
+
+  /**
+   * Create a new {@link Fsm} instance starting in {@code initialState}.
+   *
+   * @param initialState the initial state.
+   * @param userContext the user context of the new instance.
+   * @return a new {@link Fsm} instance.
+   */
+  public Fsm<S, E> newInstance(S initialState, Object userContext) {
+    return new StrictMachine<>(this, executorSupplier.get(), userContext, initialState);
+  }
+
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timer for large numbers of short tasks whose timing needn't be precise, such as the delayed
+ * events and state timeouts of {@link StrictMachine}s.
+ *
+ * <p>Tasks are hashed into the buckets of a wheel that a single worker thread advances one
+ * bucket per tick, running the tasks whose delay has elapsed. Scheduling and cancelling are
+ * O(1) and allocate nothing but the {@link Timeout} itself; a task runs up to one tick late.
+ * Tasks run on the worker thread and must be short.
+ *
+ * <p>The worker thread is started when the first task is scheduled.
+ */
+public final class HashedWheelTimer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+  private static final AtomicInteger TIMER_ID = new AtomicInteger(0);
+
+  private static final int INIT = 0;
+  private static final int STARTED = 1;
+  private static final int STOPPED = 2;
+
+  /**
+   * The most new timeouts moved into the wheel per tick, so a flood of them can't stall it.
+   */
+  private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+  private static final VarHandle WORKER_STATE;
+
+  static {
+    try {
+      WORKER_STATE = MethodHandles.lookup()
+          .findVarHandle(HashedWheelTimer.class, "workerState", int.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private volatile int workerState = INIT;
+
+  /**
+   * When the worker was started, in {@link System#nanoTime()}; deadlines are relative to it.
+   */
+  private volatile long startTime;
+
+  /**
+   * Timeouts scheduled since the last tick, moved into the wheel by the worker.
+   */
+  private final MpscQueue<WheelTimeout> newTimeouts = new MpscQueue<>(new WheelTimeout(null, 0L));
+
+  private final Bucket[] wheel;
+  private final int mask;
+  private final long tickNanos;
+  private final Thread workerThread;
+
+  /**
+   * Create a timer with a tick of 10 milliseconds and 512 buckets, running on a daemon thread.
+   */
+  public HashedWheelTimer() {
+    this(Duration.ofMillis(10), 512);
+  }
+
+  /**
+   * Create a timer running on a daemon thread.
+   *
+   * @param tickDuration the time between ticks; tasks run up to this late.
+   * @param ticksPerWheel the number of buckets, rounded up to a power of two.
+   */
+  public HashedWheelTimer(Duration tickDuration, int ticksPerWheel) {
+    this(tickDuration, ticksPerWheel, daemonThreadFactory());
+  }
+
+  /**
+   * Create a timer running on a thread created by {@code threadFactory}.
+   *
+   * @param tickDuration the time between ticks; tasks run up to this late.
+   * @param ticksPerWheel the number of buckets, rounded up to a power of two.
+   * @param threadFactory the {@link ThreadFactory} used to create the worker thread.
+   */
+  public HashedWheelTimer(Duration tickDuration, int ticksPerWheel, ThreadFactory threadFactory) {
+    if (tickDuration.isNegative() || tickDuration.isZero()) {
+      throw new IllegalArgumentException("tickDuration must be > 0: " + tickDuration);
+    }
+    if (ticksPerWheel < 1 || ticksPerWheel > 1 << 30) {
+      throw new IllegalArgumentException("ticksPerWheel out of range: " + ticksPerWheel);
+    }
+
+    int buckets = Integer.highestOneBit(ticksPerWheel);
+    if (buckets < ticksPerWheel) {
+      buckets <<= 1;
+    }
+
+    wheel = new Bucket[buckets];
+    for (int i = 0; i < buckets; i++) {
+      wheel[i] = new Bucket();
+    }
+
+    mask = buckets - 1;
+    tickNanos = tickDuration.toNanos();
+    workerThread = threadFactory.newThread(new Worker());
+  }
+
+  /**
+   * Schedule {@code task} to run once {@code delay} has elapsed.
+   *
+   * @param task the task to run on the timer's worker thread.
+   * @param delay the delay; zero or negative to run at the next tick.
+   * @return a {@link Timeout} that can cancel the task.
+   * @throws IllegalStateException if the timer was stopped.
+   */
+  public Timeout newTimeout(Runnable task, Duration delay) {
+    start();
+
+    long deadline = System.nanoTime() + saturatedNanos(delay) - startTime;
+    if (deadline < 0) {
+      // overflowed by a very long delay
+      deadline = Long.MAX_VALUE;
+    }
+
+    var timeout = new WheelTimeout(task, deadline);
+
+    newTimeouts.offer(timeout);
+
+    return timeout;
+  }
+
+  /**
+   * Stop the worker thread. Tasks that haven't run yet never will, and no new tasks may be
+   * scheduled.
+   */
+  public void stop() {
+    int state = (int) WORKER_STATE.getAndSet(this, STOPPED);
+
+    if (state == STARTED) {
+      LockSupport.unpark(workerThread);
+    }
+  }
+
+  /**
+   * Get the timer shared by every {@link StrictMachine}, with a tick of 10 milliseconds.
+   *
+   * <p>Its thread is a daemon thread and it is never stopped.
+   *
+   * @return the shared {@link HashedWheelTimer}.
+   */
+  public static HashedWheelTimer shared() {
+    return SharedHolder.INSTANCE;
+  }
+
+  private void start() {
+    int state = workerState;
+
+    if (state == INIT) {
+      synchronized (this) {
+        if (workerState == INIT) {
+          startTime = System.nanoTime();
+          workerState = STARTED;
+          workerThread.start();
+        }
+      }
+    } else if (state == STOPPED) {
+      throw new IllegalStateException("timer stopped");
+    }
+  }
+
+  private static long saturatedNanos(Duration delay) {
+    try {
+      return Math.max(0L, delay.toNanos());
+    } catch (ArithmeticException e) {
+      return delay.isNegative() ? 0L : Long.MAX_VALUE;
+    }
+  }
+
+  private static ThreadFactory daemonThreadFactory() {
+    int timerId = TIMER_ID.getAndIncrement();
+
+    return runnable -> {
+      var thread = new Thread(runnable, "strict-machine-timer-" + timerId);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private final class Worker implements Runnable {
+
+    private long tick;
+
+    @Override
+    public void run() {
+      while (workerState == STARTED) {
+        long now = waitForNextTick();
+
+        if (now >= 0) {
+          transferNewTimeouts();
+
+          wheel[(int) (tick & mask)].expireTimeouts(now);
+
+          tick++;
+        }
+      }
+    }
+
+    /**
+     * Wait until the next tick is due.
+     *
+     * @return the current time relative to {@link #startTime}, or -1 if stopped while waiting.
+     */
+    private long waitForNextTick() {
+      long deadline = tickNanos * (tick + 1);
+
+      while (true) {
+        long now = System.nanoTime() - startTime;
+
+        if (now >= deadline) {
+          return now;
+        }
+        if (workerState != STARTED) {
+          return -1L;
+        }
+
+        LockSupport.parkNanos(this, deadline - now);
+      }
+    }
+
+    private void transferNewTimeouts() {
+      for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+        WheelTimeout timeout = newTimeouts.poll();
+
+        if (timeout == null) {
+          return;
+        }
+        if (timeout.isCancelled()) {
+          continue;
+        }
+
+        long calculated = timeout.deadline / tickNanos;
+        timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+        // a deadline already passed goes in the current bucket
+        long ticks = Math.max(calculated, tick);
+
+        wheel[(int) (ticks & mask)].add(timeout);
+      }
+    }
+
+  }
+
+  /**
+   * A doubly linked list of the timeouts hashed to one slot of the wheel. Worker thread only.
+   */
+  private static final class Bucket {
+
+    private WheelTimeout head;
+    private WheelTimeout tail;
+
+    void add(WheelTimeout timeout) {
+      if (tail == null) {
+        head = tail = timeout;
+      } else {
+        tail.nextInBucket = timeout;
+        timeout.prevInBucket = tail;
+        tail = timeout;
+      }
+    }
+
+    /**
+     * Run the timeouts whose deadline has passed, and remove them along with cancelled ones.
+     * Cancelled timeouts are removed here rather than when cancelled, so cancelling is a single
+     * atomic update and a cancelled timeout is retained for at most one turn of the wheel.
+     */
+    void expireTimeouts(long now) {
+      WheelTimeout timeout = head;
+
+      while (timeout != null) {
+        WheelTimeout next = timeout.nextInBucket;
+
+        if (timeout.isCancelled()) {
+          remove(timeout);
+        } else if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+          remove(timeout);
+          timeout.expire();
+        } else if (timeout.remainingRounds > 0) {
+          timeout.remainingRounds--;
+        }
+
+        timeout = next;
+      }
+    }
+
+    private void remove(WheelTimeout timeout) {
+      WheelTimeout prev = timeout.prevInBucket;
+      WheelTimeout next = timeout.nextInBucket;
+
+      if (prev == null) {
+        head = next;
+      } else {
+        prev.nextInBucket = next;
+      }
+      if (next == null) {
+        tail = prev;
+      } else {
+        next.prevInBucket = prev;
+      }
+
+      timeout.prevInBucket = null;
+      timeout.nextInBucket = null;
+    }
+
+  }
+
+  private static final class WheelTimeout extends MpscQueue.Node<WheelTimeout>
+      implements Timeout {
+
+    private static final VarHandle STATE;
+
+    static {
+      try {
+        STATE = MethodHandles.lookup().findVarHandle(WheelTimeout.class, "state", int.class);
+      } catch (ReflectiveOperationException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    @SuppressWarnings("unused")
+    private volatile int state = PENDING;
+
+    private Runnable task;
+
+    /**
+     * The deadline, relative to {@link #startTime}.
+     */
+    private final long deadline;
+
+    // worker thread only
+    private long remainingRounds;
+    private WheelTimeout prevInBucket;
+    private WheelTimeout nextInBucket;
+
+    WheelTimeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public boolean cancel() {
+      if (STATE.compareAndSet(this, PENDING, CANCELLED)) {
+        // release the task now; the timeout itself is removed from the wheel lazily
+        task = null;
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return state == CANCELLED;
+    }
+
+    @Override
+    public boolean isExpired() {
+      return state == EXPIRED;
+    }
+
+    void expire() {
+      if (!STATE.compareAndSet(this, PENDING, EXPIRED)) {
+        return;
+      }
+
+      Runnable task = this.task;
+      this.task = null;
+
+      try {
+        task.run();
+      } catch (Throwable t) {
+        LOGGER.warn("uncaught Throwable running timer task: {}", task, t);
+      }
+    }
+
+  }
+
+  private static class SharedHolder {
+
+    static final HashedWheelTimer INSTANCE = new HashedWheelTimer();
+
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A {@link StampedLock} whose write lock is reentrant for the thread holding it, which may also
+ * take the read lock.
+ *
+ * <p>Actions run while the write lock is held and call back into the {@link FsmContext}, so the
+ * owning thread must be able to re-acquire it. Re-acquisitions by the owner return a stamp of
+ * {@code 0}, which the matching unlock ignores.
+ *
+ * <p>It extends rather than wraps the lock to save an object per machine. Its lock views must
+ * not be used.
+ */
+@SuppressWarnings("serial")
+final class MachineLock extends StampedLock {
+
+  /**
+   * The thread holding the write lock. Only ever compared against the current thread, which can
+   * only observe itself here if it set the field, so it needn't be volatile.
+   */
+  private Thread writeOwner;
+
+  @Override
+  public long writeLock() {
+    Thread current = Thread.currentThread();
+
+    if (writeOwner == current) {
+      return 0L;
+    }
+
+    long stamp = super.writeLock();
+    writeOwner = current;
+    return stamp;
+  }
+
+  @Override
+  public void unlockWrite(long stamp) {
+    if (stamp != 0L) {
+      writeOwner = null;
+      super.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public long readLock() {
+    if (writeOwner == Thread.currentThread()) {
+      return 0L;
+    }
+
+    return super.readLock();
+  }
+
+  @Override
+  public void unlockRead(long stamp) {
+    if (stamp != 0L) {
+      super.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Check whether the current thread holds the write lock.
+   *
+   * @return {@code true} if the current thread holds the write lock.
+   */
+  boolean isWriteLockedByCurrentThread() {
+    return writeOwner == Thread.currentThread();
+  }
+
+}
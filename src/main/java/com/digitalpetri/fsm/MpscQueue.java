@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * An unbounded, intrusive, lock-free multi-producer/single-consumer linked queue.
+ *
+ * <p>Producers link a node in with a single atomic exchange of the tail. The consumer owns the
+ * head and must not call {@link #poll()} or {@link #isEmpty()} from more than one thread at a
+ * time; callers provide that exclusion, and the happens-before edges between consecutive
+ * consumer threads, themselves.
+ *
+ * <p>The most recently polled node remains linked as the queue's stub until the next poll.
+ *
+ * @param <N> the node type.
+ */
+final class MpscQueue<N extends MpscQueue.Node<N>> {
+
+  private static final VarHandle TAIL;
+
+  static {
+    try {
+      TAIL = MethodHandles.lookup().findVarHandle(MpscQueue.class, "tail", Node.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private volatile N tail;
+
+  private N head;
+
+  /**
+   * Create an empty queue.
+   *
+   * @param stub a node that is never returned by {@link #poll()}.
+   */
+  MpscQueue(N stub) {
+    this.head = stub;
+    this.tail = stub;
+  }
+
+  /**
+   * Append {@code node} to the tail of the queue. Safe to call from any thread.
+   *
+   * @param node the node to append; must not currently be linked into any queue.
+   */
+  @SuppressWarnings("unchecked")
+  void offer(N node) {
+    node.next = null;
+
+    N prev = (N) TAIL.getAndSet(this, node);
+
+    prev.next = node;
+  }
+
+  /**
+   * Append the chain of nodes from {@code first} to {@code last} to the tail of the queue, with no
+   * other producer's nodes in between. Safe to call from any thread.
+   *
+   * @param first the first node of the chain, linked to the rest of it via {@link Node#next}.
+   * @param last the last node of the chain; may be {@code first}.
+   */
+  @SuppressWarnings("unchecked")
+  void offerAll(N first, N last) {
+    last.next = null;
+
+    N prev = (N) TAIL.getAndSet(this, last);
+
+    prev.next = first;
+  }
+
+  /**
+   * Remove and return the node at the head of the queue, or {@code null} if the queue is empty.
+   * Consumer only.
+   *
+   * @return the node at the head of the queue, or {@code null} if the queue is empty.
+   */
+  N poll() {
+    N h = head;
+    N next = h.next;
+
+    if (next == null) {
+      if (h == tail) {
+        return null;
+      }
+
+      // a producer has swapped the tail but not yet linked its node; it's about to.
+      while ((next = h.next) == null) {
+        Thread.onSpinWait();
+      }
+    }
+
+    head = next;
+
+    return next;
+  }
+
+  /**
+   * Get the queue's current stub: the node most recently polled, or the node it was created with.
+   * Consumer only.
+   *
+   * @return the queue's current stub.
+   */
+  N stub() {
+    return head;
+  }
+
+  /**
+   * Check whether the queue is empty.
+   *
+   * <p>Exact when called by the consumer. Other threads may call it but can observe a stale
+   * answer while a consumer is concurrently polling.
+   *
+   * @return {@code true} if the queue is empty.
+   */
+  boolean isEmpty() {
+    return head == tail;
+  }
+
+  abstract static class Node<N extends Node<N>> {
+
+    volatile N next;
+
+  }
+
+}
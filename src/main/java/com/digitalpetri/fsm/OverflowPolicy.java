@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+/**
+ * What a {@link StrictMachine} with a bounded event queue does with an event fired while the
+ * queue is full.
+ *
+ * <p>Whatever the policy, {@link Fsm#tryFireEvent(Object)} never blocks and returns
+ * {@code false} if the event was not queued. Events fired by {@link Fsm#fireEventAfter(Object,
+ * java.time.Duration)} are queued the same way, so the shared timer never blocks; one that
+ * doesn't fit is dropped and logged. The event of a {@link StateTimeout} is never dropped: it's
+ * queued even if that exceeds the capacity, and {@link #DROP_OLDEST} queues it again rather than
+ * drop it.
+ *
+ * @see EventQueueCapacity
+ */
+public enum OverflowPolicy {
+
+  /**
+   * Block the producer until there is room in the queue.
+   *
+   * <p>A machine's own tasks never block on its queue; their events are queued even if that
+   * exceeds the capacity, since the machine would be waiting for itself. This covers events a
+   * machine fires at itself from its actions and state callbacks, including actions offloaded to
+   * another executor while the machine waits for them. Events fired at a machine pinned to the
+   * same {@link ShardedScheduler} shard as the firing machine don't block either, since that
+   * shard's thread is the only one the queue can drain on.
+   *
+   * <p>Events fired by one machine at another on a different thread do block, so the bound holds
+   * between machines too. Machines that fire at each other's full queues from different threads
+   * can deadlock, as can machines sharing a single-threaded executor other than a
+   * {@link ShardedScheduler} shard; use {@link Fsm#tryFireEvent(Object)} between such machines.
+   *
+   * <p>The wait is not interruptible: {@link Fsm#fireEvent(Object)} has no way to report that its
+   * event was not queued, so an interrupted producer keeps waiting for room and returns with its
+   * interrupt status still set. Use {@link Fsm#tryFireEvent(Object)} where a producer must not
+   * wait indefinitely.
+   */
+  BLOCK,
+
+  /**
+   * Reject the event: {@link Fsm#fireEvent(Object)} throws {@link IllegalStateException}.
+   */
+  REJECT,
+
+  /**
+   * Drop the oldest queued event to make room, taken from the lowest priority lane that has one.
+   * A dropped event's state callback is not invoked and its
+   * {@link java.util.concurrent.CompletionStage}, if any, is cancelled.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Drop the event being fired. Its state callback is not invoked and its
+   * {@link java.util.concurrent.CompletionStage}, if any, is cancelled.
+   */
+  DROP_NEWEST
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+/**
+ * The subset of {@link FsmContext} that only reads from the context.
+ *
+ * @param <S> state type
+ * @see Fsm#readContext(java.util.function.Function)
+ */
+public interface ReadOnlyFsmContext<S> {
+
+  /**
+   * Get the current state of the FSM.
+   *
+   * @return the current state of the FSM.
+   */
+  S currentState();
+
+  /**
+   * Get the value identified by {@code key} from the context, or {@code null} if it does not
+   * exist.
+   *
+   * @param key the {@link FsmContext.Key}.
+   * @return the value identified by {@code key}, or {@code null} if it does not exist.
+   */
+  Object get(FsmContext.Key<?> key);
+
+  /**
+   * Get the {@code long} value identified by {@code key}, or {@code 0} if it has never been set.
+   *
+   * <p>The default implementation reads the value boxed, via {@link #get(FsmContext.Key)}.
+   *
+   * @param key the {@link FsmContext.LongKey}.
+   * @return the value identified by {@code key}.
+   */
+  default long getLong(FsmContext.LongKey key) {
+    Long value = key.boxedKey().get(this);
+
+    return value != null ? value : 0L;
+  }
+
+  /**
+   * Get the {@code int} value identified by {@code key}, or {@code 0} if it has never been set.
+   *
+   * <p>The default implementation reads the value boxed, via {@link #get(FsmContext.Key)}.
+   *
+   * @param key the {@link FsmContext.IntKey}.
+   * @return the value identified by {@code key}.
+   */
+  default int getInt(FsmContext.IntKey key) {
+    Integer value = key.boxedKey().get(this);
+
+    return value != null ? value : 0;
+  }
+
+  /**
+   * Get the user-configurable context associated with this FSM instance.
+   *
+   * @return the user-configurable context associated with this FSM instance.
+   */
+  Object getUserContext();
+
+}
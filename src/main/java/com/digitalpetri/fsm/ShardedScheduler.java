@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of single-threaded shards that {@link StrictMachine}s are pinned to.
+ *
+ * <p>Each shard owns one worker thread. A machine is assigned a shard by a stable hash of a key
+ * and all of its work runs on that shard's thread, so its events are evaluated in order while
+ * machines on different shards run in parallel.
+ */
+public final class ShardedScheduler {
+
+  private static final AtomicInteger SCHEDULER_ID = new AtomicInteger(0);
+
+  private final Shard[] shards;
+
+  /**
+   * Create a scheduler with one shard per available processor.
+   */
+  public ShardedScheduler() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Create a scheduler with {@code shardCount} shards running on daemon threads.
+   *
+   * @param shardCount the number of shards.
+   */
+  public ShardedScheduler(int shardCount) {
+    this(shardCount, daemonThreadFactory());
+  }
+
+  /**
+   * Create a scheduler with {@code shardCount} shards running on threads created by
+   * {@code threadFactory}.
+   *
+   * @param shardCount the number of shards.
+   * @param threadFactory the {@link ThreadFactory} used to create each shard's thread.
+   */
+  public ShardedScheduler(int shardCount, ThreadFactory threadFactory) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("shardCount must be >= 1: " + shardCount);
+    }
+
+    shards = new Shard[shardCount];
+
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Shard(Executors.newSingleThreadExecutor(threadFactory));
+    }
+  }
+
+  /**
+   * Get the {@link Executor} for the shard {@code key} is pinned to.
+   *
+   * <p>Equal keys always map to the same shard.
+   *
+   * @param key the key to pin, e.g. a machine instance id.
+   * @return the {@link Executor} for the shard {@code key} is pinned to.
+   */
+  public Executor executor(Object key) {
+    return shards[shardIndex(key.hashCode(), shards.length)];
+  }
+
+  /**
+   * Get the number of shards.
+   *
+   * @return the number of shards.
+   */
+  public int shardCount() {
+    return shards.length;
+  }
+
+  /**
+   * Shut down every shard. Previously submitted work is executed, new work is rejected.
+   */
+  public void shutdown() {
+    for (Shard shard : shards) {
+      shard.service.shutdown();
+    }
+  }
+
+  /**
+   * Wait for every shard to terminate after a {@link #shutdown()}.
+   *
+   * @param timeout the maximum time to wait.
+   * @param unit the unit of {@code timeout}.
+   * @return {@code true} if every shard terminated before the timeout elapsed.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+    for (Shard shard : shards) {
+      long remaining = deadline - System.nanoTime();
+
+      if (!shard.service.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the scheduler shared by every {@link com.digitalpetri.fsm.dsl.FsmBuilder} that wasn't
+   * given an {@link Executor}, with one shard per available processor.
+   *
+   * <p>Its threads are daemon threads and it is never shut down.
+   *
+   * @return the shared {@link ShardedScheduler}.
+   */
+  public static ShardedScheduler shared() {
+    return SharedHolder.INSTANCE;
+  }
+
+  /**
+   * Check whether {@code executor} is the {@link Executor} of a shard, which runs every task on
+   * the same single thread.
+   */
+  static boolean isShard(Executor executor) {
+    return executor instanceof Shard;
+  }
+
+  static int shardIndex(int hash, int shardCount) {
+    // spread sequential ids and poor hashCodes across shards
+    int h = hash * 0x9E3779B9;
+    h ^= h >>> 16;
+
+    return Math.floorMod(h, shardCount);
+  }
+
+  private static ThreadFactory daemonThreadFactory() {
+    int schedulerId = SCHEDULER_ID.getAndIncrement();
+    var threadId = new AtomicInteger(0);
+
+    return runnable -> {
+      var thread = new Thread(
+          runnable,
+          "strict-machine-" + schedulerId + "-shard-" + threadId.getAndIncrement()
+      );
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static final class Shard implements Executor {
+
+    final ExecutorService service;
+
+    Shard(ExecutorService service) {
+      this.service = service;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      service.execute(command);
+    }
+
+  }
+
+  private static class SharedHolder {
+
+    static final ShardedScheduler INSTANCE = new ShardedScheduler();
+
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * The state of an {@link Fsm} together with the number of events it had evaluated when it arrived
+ * in that state.
+ *
+ * <p>The sequence increases by one for every evaluated event, including those that cause an
+ * internal transition, so two snapshots with equal sequences describe the same point in the
+ * machine's history. An {@link Fsm} that doesn't count evaluated events reports a sequence of -1.
+ *
+ * @param <S> state type
+ */
+public final class StateSnapshot<S> {
+
+  private final S state;
+  private final long sequence;
+
+  public StateSnapshot(S state, long sequence) {
+    this.state = state;
+    this.sequence = sequence;
+  }
+
+  /**
+   * Get the state.
+   *
+   * @return the state.
+   */
+  public S state() {
+    return state;
+  }
+
+  /**
+   * Get the number of events evaluated when the machine arrived in {@link #state()}.
+   *
+   * @return the number of events evaluated when the machine arrived in {@link #state()}, or -1
+   *     if the machine doesn't count them.
+   */
+  public long sequence() {
+    return sequence;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    StateSnapshot<?> that = (StateSnapshot<?>) o;
+    return sequence == that.sequence
+        && Objects.equals(state, that.state);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(state, sequence);
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", StateSnapshot.class.getSimpleName() + "[", "]")
+        .add("state=" + state)
+        .add("sequence=" + sequence)
+        .toString();
+  }
+
+}
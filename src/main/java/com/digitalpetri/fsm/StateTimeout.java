@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * An event fired at a {@link StrictMachine} once it has been in a state for a given delay.
+ *
+ * <p>The timeout is scheduled on the {@link HashedWheelTimer#shared() shared timer} each time the
+ * machine enters {@code state}, and is cancelled if the machine leaves {@code state} before the
+ * delay elapses; an internal transition doesn't restart it.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+public final class StateTimeout<S, E> {
+
+  private final S state;
+  private final Duration delay;
+  private final E event;
+
+  private StateTimeout(S state, Duration delay, E event) {
+    this.state = state;
+    this.delay = delay;
+    this.event = event;
+  }
+
+  /**
+   * Get the state the timeout applies to.
+   *
+   * @return the state the timeout applies to.
+   */
+  public S state() {
+    return state;
+  }
+
+  /**
+   * Get the time the machine must remain in {@link #state()} before {@link #event()} is fired.
+   *
+   * @return the delay.
+   */
+  public Duration delay() {
+    return delay;
+  }
+
+  /**
+   * Get the event fired when the delay elapses.
+   *
+   * @return the event fired when the delay elapses.
+   */
+  public E event() {
+    return event;
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", StateTimeout.class.getSimpleName() + "[", "]")
+        .add("state=" + state)
+        .add("delay=" + delay)
+        .add("event=" + event)
+        .toString();
+  }
+
+  /**
+   * Create a timeout firing {@code event} once the machine has been in {@code state} for
+   * {@code delay}.
+   *
+   * @param state the state the timeout applies to.
+   * @param delay the time the machine must remain in {@code state}.
+   * @param event the event fired when {@code delay} elapses.
+   * @param <S> state type
+   * @param <E> event type
+   * @return a new {@link StateTimeout}.
+   */
+  public static <S, E> StateTimeout<S, E> of(S state, Duration delay, E event) {
+    Objects.requireNonNull(state, "state");
+    Objects.requireNonNull(event, "event");
+
+    if (delay.isNegative()) {
+      throw new IllegalArgumentException("delay must be >= 0: " + delay);
+    }
+
+    return new StateTimeout<>(state, delay, event);
+  }
+
+}
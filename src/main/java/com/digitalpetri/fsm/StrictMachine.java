@@ -10,43 +10,155 @@
 
 package com.digitalpetri.fsm;
 
+import com.digitalpetri.fsm.dsl.Action;
 import com.digitalpetri.fsm.dsl.ActionContext;
 import com.digitalpetri.fsm.dsl.ActionProxy;
+import com.digitalpetri.fsm.dsl.AsyncAction;
+import com.digitalpetri.fsm.dsl.AsyncTransitionAction;
+import com.digitalpetri.fsm.dsl.ExecutionTag;
+import com.digitalpetri.fsm.dsl.ParallelTransitionAction;
+import com.digitalpetri.fsm.dsl.PipelinedTransitionAction;
 import com.digitalpetri.fsm.dsl.Transition;
 import com.digitalpetri.fsm.dsl.TransitionAction;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedTransferQueue;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 public class StrictMachine<S, E> implements Fsm<S, E> {
 
-  private volatile boolean pollExecuted = false;
-  private final Object queueLock = new Object();
-  private final ArrayDeque<PendingEvent> eventQueue = new ArrayDeque<>();
-  private final ArrayDeque<PendingEvent> eventShelf = new ArrayDeque<>();
-
-  private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
-  private final Map<FsmContext.Key<?>, Object> contextValues = new ConcurrentHashMap<>();
-  private final AtomicReference<S> state = new AtomicReference<>();
-
-  private final Logger logger;
-  private final Map<String, String> mdc;
+  /**
+   * Set while a {@link PollAndEvaluate} is submitted or running; whoever flips it from
+   * {@code false} to {@code true} via {@link #POLL_SCHEDULED} submits the next one.
+   */
+  private volatile boolean pollScheduled;
+
+  /**
+   * Queued events, one queue per priority lane, when the {@link EventQueueCapacity} is unbounded,
+   * otherwise {@code null}. The node most recently polled from a queue remains its stub until the
+   * next poll, after which it's recycled.
+   */
+  private final MpscQueue<PendingEvent>[] eventQueues;
+
+  /**
+   * Queued events, in one queue whose priority lanes share its capacity, when the
+   * {@link EventQueueCapacity} is bounded, otherwise {@code null}. Polled nodes aren't kept as a
+   * stub and are recycled as soon as they're completed.
+   */
+  private final BoundedEventQueue<PendingEvent> boundedEventQueue;
+
+  /**
+   * Recycled {@link PendingEvent}s, allocated the first time one is recycled. A producer takes one
+   * by swapping its slot to {@code null}; a node is returned by swapping an empty slot to it.
+   */
+  private volatile AtomicReferenceArray<PendingEvent> pendingEventPool;
+
+  /**
+   * Queued events that others may still be coalesced into, by coalescing key; allocated via
+   * {@link #COALESCIBLE_EVENTS} when the first is fired. An entry is removed before its event is
+   * evaluated or dropped, so an event merged into it while present is never lost.
+   */
+  private volatile Map<Object, PendingEvent> coalescibleEvents;
+
+  /**
+   * Shelved events re-injected by {@link FsmContext#processShelvedEvents()}, one deque per
+   * priority lane, each polled ahead of the queue of the same lane. Allocated on first use, then
+   * mutated and polled only while holding the write lock.
+   */
+  private volatile ConcurrentLinkedDeque<PendingEvent>[] reinjectedEvents;
+
+  /**
+   * Allocated on first use; accessed only while holding the write lock.
+   */
+  private ArrayDeque<PendingEvent> eventShelf;
+
+  /**
+   * The context handed to guards, actions, and {@link #withContext(Consumer)}. Allocated on first
+   * use and accessed only while holding the write lock, as is {@link #logBuilder}.
+   */
+  private ActionContextImpl context;
+  private StringBuilder logBuilder;
+
+  /**
+   * Allocated on first use, by any reader or producer; neither holds state of its own, so racing
+   * allocations are harmless.
+   */
+  private ReadOnlyContextImpl readOnlyContext;
+  private PollAndEvaluate pollAndEvaluate;
+
+  /**
+   * The {@link StateTimeout}s scheduled on entering the current state, linked via
+   * {@link StateTimeoutTask#next}; accessed only while holding the write lock, or by the
+   * constructor.
+   */
+  private StateTimeoutTask stateTimeouts;
+
+  /**
+   * Set while evaluation is suspended waiting for an {@link AsyncAction} to complete; accessed
+   * only while holding the write lock.
+   */
+  private Suspension suspension;
+
+  /**
+   * The second stage when actions are pipelined; allocated on first use, while holding the write
+   * lock.
+   */
+  private ActionPipeline actionPipeline;
+
+  private final MachineLock lock = new MachineLock();
+
+  /**
+   * Values of keys with a slot in the {@link ContextLayout}; values of all other keys are kept in
+   * {@link #contextValues}, allocated when the first is set. Both are modified only while holding
+   * the write lock.
+   */
+  private final Object[] slotValues;
+  private volatile Map<FsmContext.Key<?>, Object> contextValues;
+
+  /**
+   * Values of {@link FsmContext.LongKey}s and {@link FsmContext.IntKey}s with a slot in
+   * the {@link ContextLayout}; all others are kept in a one-element array per key in
+   * {@link #primitiveValues}, allocated via {@link #PRIMITIVE_VALUES} when the first is set.
+   * Accessed atomically via {@link #LONGS} without the lock.
+   */
+  private final long[] primitiveSlotValues;
+  private volatile Map<Object, long[]> primitiveValues;
+
+  /**
+   * The current state. Written only by the thread evaluating events, while holding the write
+   * lock, and bracketed by increments of {@link #stateVersion}.
+   */
+  private volatile S state;
+
+  /**
+   * Odd while {@link #state} is being replaced, even otherwise; half of it is the number of
+   * events evaluated so far.
+   */
+  private volatile long stateVersion = 0L;
+
+  private final FsmDefinition<S, E> definition;
   private final Executor executor;
   private final Object userContext;
-  private final ActionProxy<S, E> actionProxy;
-  private final List<Transition<S, E>> transitions;
-  private final List<TransitionAction<S, E>> transitionActions;
 
   public StrictMachine(
       String loggerName,
@@ -59,223 +171,1836 @@ public class StrictMachine<S, E> implements Fsm<S, E> {
       List<TransitionAction<S, E>> transitionActions
   ) {
 
-    this.logger = LoggerFactory.getLogger(loggerName);
-    this.mdc = mdc;
-    this.executor = executor;
-    this.userContext = userContext;
-    this.actionProxy = actionProxy;
-    this.transitions = transitions;
-    this.transitionActions = transitionActions;
+    this(
+        new FsmDefinition<>(
+            loggerName,
+            mdc,
+            () -> executor,
+            EventBatching.none(),
+            EventQueueCapacity.unbounded(),
+            null,
+            1,
+            null,
+            List.of(),
+            null,
+            null,
+            List.of(),
+            List.of(),
+            List.of(),
+            userContext,
+            actionProxy,
+            (ctx, state, event) -> {
+              for (Transition<S, E> transition : transitions) {
+                if (transition.matches(ctx, state, event)) {
+                  return transition.target();
+                }
+              }
+              return state;
+            },
+            (from, to, event) -> {
+              var matchingActions = new ArrayList<TransitionAction<S, E>>();
+              for (TransitionAction<S, E> transitionAction : transitionActions) {
+                if (transitionAction.matches(from, to, event)) {
+                  matchingActions.add(transitionAction);
+                }
+              }
+              return matchingActions;
+            }
+        ),
+        executor,
+        userContext,
+        initialState
+    );
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  StrictMachine(
+      FsmDefinition<S, E> definition,
+      Executor executor,
+      Object userContext,
+      S initialState
+  ) {
+
+    this.definition = definition;
+    this.executor = executor;
+    this.userContext = userContext;
+
+    ContextLayout contextLayout = definition.contextLayout;
+    slotValues = contextLayout.slotCount() == 0
+        ? NO_SLOT_VALUES
+        : new Object[contextLayout.slotCount()];
+    primitiveSlotValues = contextLayout.primitiveSlotCount() == 0
+        ? NO_PRIMITIVE_SLOT_VALUES
+        : new long[contextLayout.primitiveSlotCount()];
+
+    int lanes = definition.priorityLanes;
+
+    if (definition.eventQueueCapacity.isBounded()) {
+      eventQueues = null;
+      boundedEventQueue = new BoundedEventQueue<>(definition.eventQueueCapacity.capacity(), lanes);
+    } else {
+      eventQueues = new MpscQueue[lanes];
+      for (int i = 0; i < lanes; i++) {
+        eventQueues[i] = new MpscQueue<>(new PendingEvent());
+      }
+      boundedEventQueue = null;
+    }
+
+    state = initialState;
+
+    scheduleStateTimeouts(initialState);
+  }
+
+  @Override
+  public S getState() {
+    return state;
+  }
+
+  @Override
+  public StateSnapshot<S> getStateSnapshot() {
+    while (true) {
+      long version = stateVersion;
+      S s = state;
+
+      if ((version & 1L) == 0L && version == stateVersion) {
+        return new StateSnapshot<>(s, version >>> 1);
+      }
+
+      Thread.onSpinWait();
+    }
+  }
+
+  @Override
+  public void fireEvent(E event) {
+    fireEvent(event, null);
+  }
+
+  @Override
+  public void fireEvent(E event, Consumer<S> stateConsumer) {
+    offer(event, stateConsumer, null, false);
+  }
+
+  @Override
+  public boolean tryFireEvent(E event) {
+    return offer(event, null, null, true);
+  }
+
+  @Override
+  public Timeout fireEventAfter(E event, Duration delay) {
+    return HashedWheelTimer.shared().newTimeout(() -> {
+      // never wait for room in a full queue: the timer is shared by all machines
+      if (!offer(event, null, null, true)) {
+        Map<String, String> mdc = definition.mdc;
+
+        mdc.forEach(MDC::put);
+        try {
+          definition.logger.warn("event queue full, dropped event fired after {}: {}",
+              delay, event);
+        } finally {
+          mdc.keySet().forEach(MDC::remove);
+        }
+      }
+    }, delay);
+  }
+
+  @Override
+  public CompletionStage<S> fireEventAsync(E event) {
+    var completion = new CompletableFuture<S>();
+
+    offer(event, null, completion, false);
+
+    return completion;
+  }
+
+  @Override
+  public void fireEvents(List<E> events, Consumer<S> stateConsumer) {
+    offerAll(events, stateConsumer, null);
+  }
+
+  @Override
+  public CompletionStage<S> fireEventsAsync(List<E> events) {
+    var completion = new CompletableFuture<S>();
+
+    offerAll(events, null, completion);
+
+    return completion;
+  }
+
+  @Override
+  public S fireEventBlocking(E event) throws InterruptedException {
+    try {
+      return fireEventAsync(event).toCompletableFuture().get();
+    } catch (ExecutionException e) {
+      // not expected: the completion is either completed normally or cancelled
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  @Override
+  public <T> T getFromContext(Function<FsmContext<S, E>, T> get) {
+    long stamp = lock.writeLock();
+    try {
+      return get.apply(context());
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public <T> T readContext(Function<ReadOnlyFsmContext<S>, T> read) {
+    long stamp = lock.tryOptimisticRead();
+
+    if (stamp != 0L) {
+      try {
+        T value = read.apply(readOnlyContext());
+
+        if (lock.validate(stamp)) {
+          return value;
+        }
+      } catch (RuntimeException e) {
+        // may have read inconsistent values; rethrow only if it wasn't because of a write.
+        if (lock.validate(stamp)) {
+          throw e;
+        }
+      }
+    }
+
+    stamp = lock.readLock();
+    try {
+      return read.apply(readOnlyContext());
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public void withContext(Consumer<FsmContext<S, E>> contextConsumer) {
+    long stamp = lock.writeLock();
+    try {
+      contextConsumer.accept(context());
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Queue {@code event}, or coalesce it into a queued event with the same coalescing key.
+   *
+   * @return {@code true} if {@code event} was queued or coalesced.
+   */
+  private boolean offer(
+      E event,
+      Consumer<S> stateConsumer,
+      CompletableFuture<S> completion,
+      boolean tryOnly
+  ) {
+
+    Function<? super E, ?> coalescingKey = definition.coalescingKey;
+    Object key = coalescingKey != null ? coalescingKey.apply(event) : null;
+
+    PendingEvent pending;
+
+    if (key == null) {
+      pending = acquirePendingEvent(event, stateConsumer, completion);
+    } else if (mayFailWithoutWaiting(tryOnly)) {
+      return offerCoalescibleIfRoom(key, event, stateConsumer, completion, tryOnly);
+    } else {
+      pending = acquireCoalescible(key, event, stateConsumer, completion);
+
+      if (pending == null) {
+        // merged into a queued event; its poll is already scheduled
+        return true;
+      }
+    }
+
+    if (enqueue(laneOf(event), pending, pending, 1, tryOnly)) {
+      maybeExecutePoll();
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Merge {@code event} into the queued event with coalescing key {@code key}, or, if there is
+   * none, acquire a PendingEvent for it that's registered under {@code key} before it's queued.
+   * Only used when queueing it can't fail.
+   *
+   * @return the PendingEvent to queue, or {@code null} if {@code event} was merged.
+   */
+  private PendingEvent acquireCoalescible(
+      Object key,
+      E event,
+      Consumer<S> stateConsumer,
+      CompletableFuture<S> completion
+  ) {
+
+    Map<Object, PendingEvent> coalescible = coalescibleEvents();
+    PendingEvent pending = null;
+
+    while (true) {
+      PendingEvent merged = coalescible.computeIfPresent(key, (k, p) -> {
+        p.merge(event, stateConsumer, completion);
+        return p;
+      });
+
+      if (merged != null) {
+        if (pending != null) {
+          pending.release();
+          recyclePendingEvent(pending);
+        }
+        return null;
+      }
+
+      if (pending == null) {
+        pending = acquirePendingEvent(event, stateConsumer, completion);
+        pending.coalescingKey = key;
+      }
+
+      if (coalescible.putIfAbsent(key, pending) == null) {
+        return pending;
+      }
+    }
+  }
+
+  /**
+   * Check whether queueing an event in a bounded queue could fail, rather than wait or make room,
+   * if the queue is full.
+   */
+  private boolean mayFailWithoutWaiting(boolean tryOnly) {
+    if (boundedEventQueue == null) {
+      return false;
+    }
+
+    switch (definition.eventQueueCapacity.overflowPolicy()) {
+      case REJECT:
+      case DROP_NEWEST:
+        return true;
+      case BLOCK:
+        return tryOnly && !mustNotWait();
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Check whether the current thread must not wait for room in a full queue, because the wait
+   * could never end: it holds this machine's write lock, or it's running a task of this machine
+   * or of another machine on the same {@link ShardedScheduler} shard, which is the only thread
+   * this machine's queue can drain on. See {@link #MACHINE_TASKS}.
+   */
+  private boolean mustNotWait() {
+    if (lock.isWriteLockedByCurrentThread()) {
+      return true;
+    }
+
+    MachineTasks tasks = MACHINE_TASKS.get();
+    boolean shard = ShardedScheduler.isShard(executor);
+
+    for (int i = 0; i < tasks.depth; i++) {
+      StrictMachine<?, ?> machine = tasks.machines[i];
+
+      if (machine == this || shard && machine.executor == executor) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Merge {@code event} into the queued event with coalescing key {@code key}, or, if there is
+   * none and the bounded queue has room, queue it and register it under {@code key}.
+   *
+   * <p>Both happen within one compute on {@link #coalescibleEvents}, so an event is registered
+   * only once it's queued and no producer merges into an event that then fails to be queued. This
+   * is only safe because queueing doesn't wait: a poller unregistering the event waits for the
+   * compute to finish.
+   *
+   * @return {@code true} if {@code event} was queued or merged.
+   */
+  private boolean offerCoalescibleIfRoom(
+      Object key,
+      E event,
+      Consumer<S> stateConsumer,
+      CompletableFuture<S> completion,
+      boolean tryOnly
+  ) {
+
+    int lane = laneOf(event);
+
+    PendingEvent registered = coalescibleEvents().compute(key, (k, p) -> {
+      if (p != null) {
+        p.merge(event, stateConsumer, completion);
+        return p;
+      }
+
+      PendingEvent pending = acquirePendingEvent(event, stateConsumer, completion);
+      // set before it's visible to the poller, which then unregisters it after this compute
+      pending.coalescingKey = key;
+
+      if (boundedEventQueue.tryOffer(lane, pending, pending, 1)) {
+        return pending;
+      }
+
+      pending.coalescingKey = null;
+      pending.drop();
+      recyclePendingEvent(pending);
+      return null;
+    });
+
+    if (registered != null) {
+      maybeExecutePoll();
+      return true;
+    }
+
+    if (definition.eventQueueCapacity.overflowPolicy() == OverflowPolicy.REJECT && !tryOnly) {
+      throw new IllegalStateException(
+          "event queue full: capacity=" + definition.eventQueueCapacity.capacity());
+    }
+
+    return false;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<Object, PendingEvent> coalescibleEvents() {
+    Map<Object, PendingEvent> coalescible = coalescibleEvents;
+
+    if (coalescible == null) {
+      coalescible = new ConcurrentHashMap<>();
+
+      var witness = (Map<Object, PendingEvent>)
+          COALESCIBLE_EVENTS.compareAndExchange(this, null, coalescible);
+      if (witness != null) {
+        coalescible = witness;
+      }
+    }
+
+    return coalescible;
+  }
+
+  /**
+   * Stop events being coalesced into {@code pending}, if they could be. Must be called before
+   * {@code pending} is evaluated or dropped.
+   */
+  private void unregisterCoalescible(PendingEvent pending) {
+    Object key = pending.coalescingKey;
+
+    if (key != null) {
+      pending.coalescingKey = null;
+      coalescibleEvents.remove(key, pending);
+    }
+  }
+
+  /**
+   * Link {@code events} into a chain of {@link PendingEvent}s, the last of which carries the
+   * callback and completion, and append the chain with a single swap of the queue's tail.
+   */
+  private void offerAll(
+      List<E> events,
+      Consumer<S> stateConsumer,
+      CompletableFuture<S> completion
+  ) {
+
+    int size = events.size();
+
+    if (size == 0) {
+      S s = state;
+
+      if (stateConsumer != null) {
+        stateConsumer.accept(s);
+      }
+      if (completion != null) {
+        completion.complete(s);
+      }
+      return;
+    }
+
+    PendingEvent first = acquirePendingEvent(events.get(0), null, null);
+    PendingEvent last = first;
+
+    for (int i = 1; i < size; i++) {
+      PendingEvent pending = acquirePendingEvent(events.get(i), null, null);
+      last.next = pending;
+      last = pending;
+    }
+
+    last.stateConsumer = stateConsumer;
+    last.completion = completion;
+
+    // a batch is kept contiguous in the lane of its first event
+    enqueue(laneOf(events.get(0)), first, last, size, false);
+
+    maybeExecutePoll();
+  }
+
+  /**
+   * Get the priority lane of {@code event}; 0 unless a lane classifier is configured.
+   */
+  private int laneOf(E event) {
+    ToIntFunction<? super E> laneClassifier = definition.laneClassifier;
+
+    if (laneClassifier == null) {
+      return 0;
+    } else {
+      return Objects.checkIndex(laneClassifier.applyAsInt(event), definition.priorityLanes);
+    }
+  }
+
+  /**
+   * Queue the chain of {@code count} PendingEvents from {@code first} to {@code last} in priority
+   * lane {@code lane}, applying the {@link OverflowPolicy} if the queue is bounded and full.
+   * Events that aren't queued are dropped.
+   *
+   * @param tryOnly {@code true} if the producer must not block or be rejected by an exception.
+   * @return {@code true} if the chain was queued.
+   */
+  private boolean enqueue(
+      int lane,
+      PendingEvent first,
+      PendingEvent last,
+      int count,
+      boolean tryOnly
+  ) {
+
+    if (boundedEventQueue == null) {
+      eventQueues[lane].offerAll(first, last);
+      return true;
+    }
+
+    OverflowPolicy overflowPolicy = definition.eventQueueCapacity.overflowPolicy();
+    boolean queued;
+
+    switch (overflowPolicy) {
+      case BLOCK:
+        if (mustNotWait()) {
+          boundedEventQueue.forceOffer(lane, first, last, count);
+          queued = true;
+        } else if (tryOnly) {
+          queued = boundedEventQueue.tryOffer(lane, first, last, count);
+        } else {
+          boundedEventQueue.offerBlocking(lane, first, last, count);
+          queued = true;
+        }
+        break;
+
+      case DROP_OLDEST:
+        dropPendingEvents(boundedEventQueue.offerDroppingOldest(lane, first, last, count));
+        queued = true;
+        break;
+
+      case REJECT:
+      case DROP_NEWEST:
+        queued = boundedEventQueue.tryOffer(lane, first, last, count);
+        break;
+
+      default:
+        throw new IllegalStateException("unknown OverflowPolicy: " + overflowPolicy);
+    }
+
+    if (!queued) {
+      dropPendingEvents(first);
+
+      if (overflowPolicy == OverflowPolicy.REJECT && !tryOnly) {
+        throw new IllegalStateException(
+            "event queue full: capacity=" + definition.eventQueueCapacity.capacity());
+      }
+    }
+
+    return queued;
+  }
+
+  /**
+   * Schedule the {@link StateTimeout}s of {@code state}, which the machine just entered.
+   */
+  private void scheduleStateTimeouts(S state) {
+    List<StateTimeout<S, E>> timeouts = definition.stateTimeouts.get(state);
+
+    if (timeouts == null) {
+      return;
+    }
+
+    for (StateTimeout<S, E> stateTimeout : timeouts) {
+      var task = new StateTimeoutTask(stateTimeout.event());
+      task.next = stateTimeouts;
+      stateTimeouts = task;
+
+      task.timeout = HashedWheelTimer.shared().newTimeout(task, stateTimeout.delay());
+    }
+  }
+
+  /**
+   * Cancel the {@link StateTimeout}s of the state the machine just left. A timeout event that was
+   * already queued is discarded when it's polled.
+   */
+  private void cancelStateTimeouts() {
+    StateTimeoutTask task = stateTimeouts;
+    stateTimeouts = null;
+
+    while (task != null) {
+      task.cancelled = true;
+      task.timeout.cancel();
+
+      StateTimeoutTask next = task.next;
+      task.next = null;
+      task = next;
+    }
+  }
+
+  /**
+   * Queue the event of a {@link StateTimeout} that elapsed, without blocking the timer; it's
+   * never coalesced, so it can be discarded if its state is left before it's evaluated.
+   *
+   * <p>A bounded queue takes it even if it's full, whatever the {@link OverflowPolicy}: a lost
+   * timeout would leave the machine in its state for good. At most one event per scheduled
+   * timeout can exceed the capacity this way.
+   */
+  private void fireStateTimeout(StateTimeoutTask task) {
+    PendingEvent pending = acquirePendingEvent(task.event, null, null);
+    pending.stateTimeout = task;
+
+    int lane = laneOf(task.event);
+
+    if (boundedEventQueue == null) {
+      eventQueues[lane].offerAll(pending, pending);
+    } else {
+      boundedEventQueue.forceOffer(lane, pending, pending, 1);
+    }
+
+    maybeExecutePoll();
+  }
+
+  private void maybeExecutePoll() {
+    if (!pollScheduled && POLL_SCHEDULED.compareAndSet(this, false, true)) {
+      try {
+        executor.execute(pollAndEvaluateTask());
+      } catch (RuntimeException e) {
+        pollScheduled = false;
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Get the context, allocating it on first use. Must be called while holding the write lock.
+   */
+  private ActionContextImpl context() {
+    ActionContextImpl c = context;
+
+    if (c == null) {
+      c = context = new ActionContextImpl();
+    }
+
+    return c;
+  }
+
+  private PollAndEvaluate pollAndEvaluateTask() {
+    PollAndEvaluate p = pollAndEvaluate;
+
+    if (p == null) {
+      p = pollAndEvaluate = new PollAndEvaluate();
+    }
+
+    return p;
+  }
+
+  private ReadOnlyContextImpl readOnlyContext() {
+    ReadOnlyContextImpl c = readOnlyContext;
+
+    if (c == null) {
+      c = readOnlyContext = new ReadOnlyContextImpl();
+    }
+
+    return c;
+  }
+
+  private Object getContextValue(FsmContext.Key<?> key) {
+    int slot = definition.contextLayout.slot(key);
+
+    if (slot >= 0) {
+      return slotValues[slot];
+    } else {
+      Map<FsmContext.Key<?>, Object> values = contextValues;
+
+      return values != null ? values.get(key) : null;
+    }
+  }
+
+  private Object removeContextValue(FsmContext.Key<?> key) {
+    int slot = definition.contextLayout.slot(key);
+
+    if (slot >= 0) {
+      Object value = slotValues[slot];
+      slotValues[slot] = null;
+      return value;
+    } else {
+      Map<FsmContext.Key<?>, Object> values = contextValues;
+
+      return values != null ? values.remove(key) : null;
+    }
+  }
+
+  private void setContextValue(FsmContext.Key<?> key, Object value) {
+    int slot = definition.contextLayout.slot(key);
+
+    if (slot >= 0) {
+      slotValues[slot] = Objects.requireNonNull(value);
+    } else {
+      Map<FsmContext.Key<?>, Object> values = contextValues;
+
+      if (values == null) {
+        values = contextValues = new ConcurrentHashMap<>();
+      }
+
+      values.put(key, value);
+    }
+  }
+
+  private long getPrimitive(Object key, int slot) {
+    if (slot >= 0) {
+      return (long) LONGS.getVolatile(primitiveSlotValues, slot);
+    } else {
+      Map<Object, long[]> values = primitiveValues;
+      long[] cell = values != null ? values.get(key) : null;
+
+      return cell != null ? (long) LONGS.getVolatile(cell, 0) : 0L;
+    }
+  }
+
+  private void setPrimitive(Object key, int slot, long value) {
+    if (slot >= 0) {
+      LONGS.setVolatile(primitiveSlotValues, slot, value);
+    } else {
+      LONGS.setVolatile(primitiveCell(key), 0, value);
+    }
+  }
+
+  private long getAndAddPrimitive(Object key, int slot, long delta) {
+    if (slot >= 0) {
+      return (long) LONGS.getAndAdd(primitiveSlotValues, slot, delta);
+    } else {
+      return (long) LONGS.getAndAdd(primitiveCell(key), 0, delta);
+    }
+  }
+
+  private boolean compareAndSetPrimitive(Object key, int slot, long expect, long update) {
+    if (slot >= 0) {
+      return LONGS.compareAndSet(primitiveSlotValues, slot, expect, update);
+    } else {
+      return LONGS.compareAndSet(primitiveCell(key), 0, expect, update);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private long[] primitiveCell(Object key) {
+    Map<Object, long[]> values = primitiveValues;
+
+    if (values == null) {
+      values = new ConcurrentHashMap<>();
+
+      var witness = (Map<Object, long[]>) PRIMITIVE_VALUES.compareAndExchange(this, null, values);
+      if (witness != null) {
+        values = witness;
+      }
+    }
+
+    long[] cell = values.get(key);
+
+    return cell != null ? cell : values.computeIfAbsent(key, k -> new long[1]);
+  }
+
+  private boolean hasPendingEvents() {
+    if (boundedEventQueue != null && !boundedEventQueue.isEmpty()) {
+      return true;
+    }
+
+    ConcurrentLinkedDeque<PendingEvent>[] reinjected = reinjectedEvents;
+
+    for (int lane = 0; lane < definition.priorityLanes; lane++) {
+      if (reinjected != null && !reinjected[lane].isEmpty()) {
+        return true;
+      }
+
+      if (boundedEventQueue == null && !eventQueues[lane].isEmpty()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Poll the next pending event from the highest priority lane that has one, taking re-injected
+   * shelved events ahead of queued events in the same lane. Must be called from the running
+   * {@link PollAndEvaluate} while holding the write lock.
+   */
+  private PendingEvent pollPendingEvent() {
+    ConcurrentLinkedDeque<PendingEvent>[] reinjected = reinjectedEvents;
+
+    for (int lane = 0; lane < definition.priorityLanes; lane++) {
+      PendingEvent pending = reinjected != null ? reinjected[lane].pollFirst() : null;
+
+      if (pending == null && boundedEventQueue != null) {
+        pending = boundedEventQueue.poll(lane);
+      } else if (pending == null) {
+        MpscQueue<PendingEvent> eventQueue = eventQueues[lane];
+        PendingEvent stub = eventQueue.stub();
+
+        pending = eventQueue.poll();
+
+        if (pending != null) {
+          // the previous stub is no longer referenced by the queue
+          recyclePendingEvent(stub);
+        }
+      }
+
+      if (pending != null && pending.stateTimeout != null && pending.stateTimeout.cancelled) {
+        // the state this timeout was scheduled for was left after it elapsed; poll the lane again
+        pending.release();
+
+        if (boundedEventQueue != null) {
+          recyclePendingEvent(pending);
+        }
+
+        lane--;
+      } else if (pending != null) {
+        unregisterCoalescible(pending);
+        return pending;
+      }
+    }
+
+    return null;
+  }
+
+  private PendingEvent acquirePendingEvent(
+      E event,
+      Consumer<S> stateConsumer,
+      CompletableFuture<S> completion
+  ) {
+
+    PendingEvent pending = null;
+    AtomicReferenceArray<PendingEvent> pool = pendingEventPool;
+
+    for (int i = 0; pool != null && i < PENDING_EVENT_POOL_SIZE; i++) {
+      PendingEvent p = pool.get(i);
+
+      if (p != null && pool.compareAndSet(i, p, null)) {
+        pending = p;
+        break;
+      }
+    }
+
+    if (pending == null) {
+      pending = new PendingEvent();
+    }
+
+    pending.event = event;
+    pending.stateConsumer = stateConsumer;
+    pending.completion = completion;
+
+    return pending;
+  }
+
+  private void recyclePendingEvent(PendingEvent pending) {
+    AtomicReferenceArray<PendingEvent> pool = pendingEventPool;
+
+    if (pool == null) {
+      // a racing allocation only loses the nodes recycled into the other pool
+      pool = pendingEventPool = new AtomicReferenceArray<>(PENDING_EVENT_POOL_SIZE);
+    }
+
+    for (int i = 0; i < PENDING_EVENT_POOL_SIZE; i++) {
+      if (pool.get(i) == null && pool.compareAndSet(i, null, pending)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Drop the chain of PendingEvents starting at {@code pending}, which may be {@code null}, and
+   * recycle them. The event of a {@link StateTimeout} is never dropped; it's queued again, behind
+   * the events that displaced it.
+   */
+  private void dropPendingEvents(PendingEvent pending) {
+    while (pending != null) {
+      final PendingEvent next = pending.next;
+
+      if (pending.stateTimeout != null) {
+        boundedEventQueue.forceOffer(laneOf(pending.event), pending, pending, 1);
+      } else {
+        unregisterCoalescible(pending);
+        pending.drop();
+        recyclePendingEvent(pending);
+      }
+
+      pending = next;
+    }
+  }
+
+  /**
+   * Complete {@code pending} with {@code state}. Nodes polled from a {@link BoundedEventQueue} are
+   * no longer referenced and can be recycled right away.
+   */
+  private void completePendingEvent(PendingEvent pending, S state) {
+    pending.complete(state);
+
+    if (boundedEventQueue != null) {
+      recyclePendingEvent(pending);
+    }
+  }
+
+  private class PendingEvent extends MpscQueue.Node<PendingEvent> {
+
+    E event;
+    Consumer<S> stateConsumer;
+    CompletableFuture<S> completion;
+
+    /**
+     * The key this event is registered under in {@link #coalescibleEvents}, or {@code null}.
+     */
+    Object coalescingKey;
+
+    /**
+     * The task that fired this event if it's the event of a {@link StateTimeout}, or
+     * {@code null}.
+     */
+    StateTimeoutTask stateTimeout;
+
+    /**
+     * Replace the event with {@code event}, which takes over its place in the queue, and add the
+     * callback and completion to be notified along with those already present. Called while
+     * holding the bin lock of {@link #coalescibleEvents}.
+     */
+    @SuppressWarnings("unchecked")
+    void merge(E event, Consumer<S> stateConsumer, CompletableFuture<S> completion) {
+      this.event = event;
+
+      if (stateConsumer != null) {
+        Consumer<S> merged = this.stateConsumer;
+
+        if (merged == null) {
+          this.stateConsumer = stateConsumer;
+        } else if (merged instanceof MergedStateConsumers) {
+          ((MergedStateConsumers<S>) merged).add(stateConsumer);
+        } else {
+          this.stateConsumer = new MergedStateConsumers<>(merged, stateConsumer);
+        }
+      }
+
+      if (completion != null) {
+        if (this.completion == null) {
+          this.completion = completion;
+        } else {
+          this.completion.whenComplete((s, ex) -> {
+            if (ex == null) {
+              completion.complete(s);
+            } else {
+              completion.cancel(false);
+            }
+          });
+        }
+      }
+    }
+
+    /**
+     * Release the event and callbacks without notifying them.
+     */
+    void release() {
+      event = null;
+      stateConsumer = null;
+      completion = null;
+      coalescingKey = null;
+      stateTimeout = null;
+    }
+
+    /**
+     * Notify the callback or completion of the state arrived at, then release the event and
+     * callbacks; a polled node lingers as the queue's stub.
+     */
+    void complete(S state) {
+      Consumer<S> stateConsumer = this.stateConsumer;
+      CompletableFuture<S> completion = this.completion;
+
+      event = null;
+      this.stateConsumer = null;
+      this.completion = null;
+      stateTimeout = null;
+
+      if (stateConsumer != null) {
+        stateConsumer.accept(state);
+      }
+      if (completion != null) {
+        completion.complete(state);
+      }
+    }
+
+    /**
+     * Release the event and callbacks without notifying the callback, cancelling the completion.
+     */
+    void drop() {
+      CompletableFuture<S> completion = this.completion;
+
+      event = null;
+      stateConsumer = null;
+      this.completion = null;
+      stateTimeout = null;
+
+      if (completion != null) {
+        completion.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * The state callbacks of events coalesced into one, notified in the order they were fired. Kept
+   * in a list rather than chained with {@link Consumer#andThen(Consumer)}, which nests a stack
+   * frame per callback when notified.
+   */
+  private static final class MergedStateConsumers<S> implements Consumer<S> {
+
+    private final List<Consumer<S>> stateConsumers = new ArrayList<>();
+
+    MergedStateConsumers(Consumer<S> first, Consumer<S> second) {
+      stateConsumers.add(first);
+      stateConsumers.add(second);
+    }
+
+    void add(Consumer<S> stateConsumer) {
+      stateConsumers.add(stateConsumer);
+    }
+
+    @Override
+    public void accept(S state) {
+      for (Consumer<S> stateConsumer : stateConsumers) {
+        stateConsumer.accept(state);
+      }
+    }
+  }
+
+  /**
+   * Fires the event of a {@link StateTimeout} scheduled on entering a state, unless the state
+   * has been left since.
+   */
+  private class StateTimeoutTask implements Runnable {
+
+    final E event;
+
+    Timeout timeout;
+    StateTimeoutTask next;
+
+    /**
+     * Set once the state is left; accessed only while holding the write lock.
+     */
+    boolean cancelled;
+
+    StateTimeoutTask(E event) {
+      this.event = event;
+    }
+
+    @Override
+    public void run() {
+      fireStateTimeout(this);
+    }
+
+  }
+
+  /**
+   * Get the end of the step of {@code actions} starting at index {@code start}: a run of
+   * consecutive {@link ParallelTransitionAction}s executed together, or a single action.
+   */
+  private static <S, E> int stepEnd(List<TransitionAction<S, E>> actions, int start) {
+    int end = start + 1;
+
+    if (actions.get(start) instanceof ParallelTransitionAction) {
+      while (end < actions.size() && actions.get(end) instanceof ParallelTransitionAction) {
+        end++;
+      }
+    }
+
+    return end;
+  }
+
+  /**
+   * Execute {@code actions} from index {@code start} to {@code end}, exclusive: a single action
+   * directly, or on the blocking action executor if it's tagged {@link ExecutionTag#BLOCKING}, or
+   * a run of {@link ParallelTransitionAction}s concurrently, each on its own executor. Actions
+   * executed on another thread share {@code context}, which is left to them if evaluation is
+   * suspended waiting for them.
+   *
+   * @return a stage that completes when the actions are done, or {@code null} if they already
+   *     are.
+   */
+  private CompletionStage<?> executeStep(
+      ActionContextImpl context,
+      List<TransitionAction<S, E>> actions,
+      int start,
+      int end
+  ) {
+
+    if (end - start == 1) {
+      TransitionAction<S, E> transitionAction = actions.get(start);
+      Executor blockingActionExecutor = definition.blockingActionExecutor;
+
+      if (blockingActionExecutor != null
+          && transitionAction.executionTag() == ExecutionTag.BLOCKING) {
+
+        return executeOn(context, transitionAction, blockingActionExecutor);
+      } else {
+        return executeAction(context, transitionAction);
+      }
+    }
+
+    var executions = new CompletableFuture<?>[end - start];
+
+    for (int i = start; i < end; i++) {
+      var transitionAction = (ParallelTransitionAction<S, E>) actions.get(i);
+
+      executions[i - start] =
+          executeOn(context, transitionAction, transitionAction.executor());
+    }
+
+    return CompletableFuture.allOf(executions);
+  }
+
+  /**
+   * Execute {@code transitionAction} on {@code actionExecutor}, or inline if it's rejected. The
+   * executing thread is marked as running a task of this machine, which waits for it, so events
+   * it fires never wait for room in a full queue.
+   *
+   * @return a stage that completes when {@code transitionAction} is done.
+   */
+  private CompletableFuture<?> executeOn(
+      ActionContextImpl context,
+      TransitionAction<S, E> transitionAction,
+      Executor actionExecutor
+  ) {
+
+    try {
+      return CompletableFuture.runAsync(
+          () -> {
+            MachineTasks tasks = enterMachineTask();
+            try {
+              executeAction(context, transitionAction);
+            } finally {
+              tasks.exit();
+            }
+          },
+          actionExecutor
+      );
+    } catch (RejectedExecutionException e) {
+      executeAction(context, transitionAction);
+
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+
+  /**
+   * Execute {@code transitionAction}, directly or via the {@link ActionProxy}.
+   *
+   * @return the stage returned by an {@link AsyncTransitionAction}, or {@code null}.
+   */
+  private CompletionStage<?> executeAction(
+      ActionContextImpl context,
+      TransitionAction<S, E> transitionAction
+  ) {
+
+    Logger logger = definition.logger;
+    Map<String, String> mdc = definition.mdc;
+
+    try {
+      if (definition.actionProxy == null) {
+        if (logger.isTraceEnabled()) {
+          mdc.forEach(MDC::put);
+          try {
+            logger.trace("executing TransitionAction: {}", transitionAction);
+          } finally {
+            mdc.keySet().forEach(MDC::remove);
+          }
+        }
+
+        if (transitionAction instanceof AsyncTransitionAction) {
+          return ((AsyncTransitionAction<S, E>) transitionAction).executeAsync(context);
+        } else {
+          transitionAction.execute(context);
+        }
+      } else {
+        if (logger.isTraceEnabled()) {
+          mdc.forEach(MDC::put);
+          try {
+            logger.trace("executing (via proxy) TransitionAction: {}", transitionAction);
+          } finally {
+            mdc.keySet().forEach(MDC::remove);
+          }
+        }
+
+        if (transitionAction instanceof AsyncTransitionAction) {
+          var action = new ProxiedAsyncAction((AsyncTransitionAction<S, E>) transitionAction);
+
+          definition.actionProxy.execute(context, action);
+
+          return action.stage;
+        } else {
+          Action<S, E> action = definition.proxiedActions.computeIfAbsent(
+              transitionAction,
+              ta -> ta::execute
+          );
+
+          definition.actionProxy.execute(context, action);
+        }
+      }
+    } catch (Throwable ex) {
+
+      mdc.forEach(MDC::put);
+      try {
+        logger.warn("uncaught Throwable executing TransitionAction: {}",
+            transitionAction, ex);
+      } finally {
+        mdc.keySet().forEach(MDC::remove);
+      }
+    }
+
+    return null;
+  }
+
+  private void logAsyncFailure(TransitionAction<S, E> transitionAction, Throwable ex) {
+    if (ex == null) {
+      return;
+    }
+
+    Map<String, String> mdc = definition.mdc;
+
+    mdc.forEach(MDC::put);
+    try {
+      definition.logger.warn("AsyncAction completed exceptionally: {}", transitionAction, ex);
+    } finally {
+      mdc.keySet().forEach(MDC::remove);
+    }
+  }
+
+  /**
+   * Check whether {@code stage}, returned by {@code transitionAction}, is still incomplete; if so,
+   * {@code resume} is submitted to {@code resumeExecutor} once it completes.
+   *
+   * @return {@code true} if execution must be suspended until {@code stage} completes.
+   */
+  private boolean suspendOn(
+      CompletionStage<?> stage,
+      TransitionAction<S, E> transitionAction,
+      Executor resumeExecutor,
+      Runnable resume
+  ) {
+
+    if (stage instanceof CompletableFuture && ((CompletableFuture<?>) stage).isDone()) {
+      // runs synchronously
+      stage.whenComplete((r, ex) -> logAsyncFailure(transitionAction, ex));
+      return false;
+    }
+
+    stage.whenComplete((r, ex) -> {
+      logAsyncFailure(transitionAction, ex);
 
-    state.set(initialState);
+      resumeExecutor.execute(resume);
+    });
+
+    return true;
   }
 
-  @Override
-  public S getState() {
-    try {
-      readWriteLock.readLock().lock();
+  private ActionPipeline actionPipeline() {
+    ActionPipeline pipeline = actionPipeline;
 
-      return state.get();
-    } finally {
-      readWriteLock.readLock().unlock();
+    if (pipeline == null) {
+      pipeline = actionPipeline = new ActionPipeline();
     }
+
+    return pipeline;
   }
 
-  @Override
-  public void fireEvent(E event) {
-    fireEvent(event, null);
+  /**
+   * The remaining actions of an event whose evaluation was suspended by an {@link AsyncAction},
+   * executed when the {@link PollAndEvaluate} task is resubmitted.
+   */
+  private class Suspension {
+
+    /**
+     * The event being evaluated, or {@code null} if it was already completed and only its
+     * pipelined actions are awaited.
+     */
+    final PendingEvent pending;
+    final S from;
+    final S to;
+    final List<TransitionAction<S, E>> actions;
+    final int nextAction;
+
+    Suspension(
+        PendingEvent pending,
+        S from,
+        S to,
+        List<TransitionAction<S, E>> actions,
+        int nextAction
+    ) {
+
+      this.pending = pending;
+      this.from = from;
+      this.to = to;
+      this.actions = actions;
+      this.nextAction = nextAction;
+    }
+
   }
 
-  @Override
-  public void fireEvent(E event, Consumer<S> stateConsumer) {
-    synchronized (queueLock) {
-      eventQueue.add(new PendingEvent(event, stateConsumer));
+  /**
+   * Adapts an {@link AsyncTransitionAction} to the {@link Action} passed to the
+   * {@link ActionProxy}, capturing the stage it returns.
+   */
+  private class ProxiedAsyncAction implements Action<S, E> {
 
-      maybeExecutePoll();
+    final AsyncTransitionAction<S, E> transitionAction;
+
+    CompletionStage<?> stage;
+
+    ProxiedAsyncAction(AsyncTransitionAction<S, E> transitionAction) {
+      this.transitionAction = transitionAction;
     }
+
+    @Override
+    public void execute(ActionContext<S, E> context) {
+      stage = transitionAction.executeAsync(context);
+    }
+
   }
 
-  @Override
-  public S fireEventBlocking(E event) throws InterruptedException {
-    var transferQueue = new LinkedTransferQueue<S>();
+  /**
+   * The actions of one evaluated event, executed by the {@link ActionPipeline}; it's also their
+   * {@link ActionContext}, so they don't share the one reused by the first stage.
+   */
+  private class ActionBatch extends ActionContextImpl {
 
-    fireEvent(event, transferQueue::put);
+    final List<TransitionAction<S, E>> actions;
 
-    return transferQueue.take();
-  }
+    /**
+     * Completed once the actions have executed, or {@code null} if nothing waits for them.
+     */
+    final CompletableFuture<Void> executed;
 
-  @Override
-  public <T> T getFromContext(Function<FsmContext<S, E>, T> get) {
-    try {
-      readWriteLock.writeLock().lock();
+    int nextAction;
 
-      return get.apply(new FsmContextImpl());
-    } finally {
-      readWriteLock.writeLock().unlock();
+    ActionBatch(
+        S from,
+        S to,
+        E event,
+        List<TransitionAction<S, E>> actions,
+        CompletableFuture<Void> executed
+    ) {
+
+      this.actions = actions;
+      this.executed = executed;
+
+      reset(from, to, event);
     }
-  }
 
-  @Override
-  public void withContext(Consumer<FsmContext<S, E>> contextConsumer) {
-    try {
-      readWriteLock.writeLock().lock();
+    /**
+     * Execute the remaining actions.
+     *
+     * @return {@code true} if they all executed; {@code false} if suspended by an
+     *     {@link AsyncAction}, in which case {@code pipeline} is resubmitted once it completes.
+     */
+    boolean execute(ActionPipeline pipeline) {
+      for (int i = nextAction; i < actions.size(); i = nextAction) {
+        TransitionAction<S, E> transitionAction = actions.get(i);
 
-      contextConsumer.accept(new FsmContextImpl());
-    } finally {
-      readWriteLock.writeLock().unlock();
+        nextAction = stepEnd(actions, i);
+
+        CompletionStage<?> stage = executeStep(this, actions, i, nextAction);
+
+        if (stage != null
+            && suspendOn(stage, transitionAction, definition.actionExecutor, pipeline)) {
+          return false;
+        }
+      }
+
+      return true;
     }
+
   }
 
-  private void maybeExecutePoll() {
-    synchronized (queueLock) {
-      if (!pollExecuted && !eventQueue.isEmpty()) {
-        executor.execute(new PollAndEvaluate());
-        pollExecuted = true;
+  /**
+   * The second stage when actions are pipelined: executes {@link ActionBatch}es one at a time, in
+   * the order their events were evaluated, on the {@link FsmDefinition#actionExecutor}.
+   */
+  private class ActionPipeline implements Runnable {
+
+    private final ConcurrentLinkedQueue<ActionBatch> batches = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    void submit(ActionBatch batch) {
+      batches.add(batch);
+
+      if (scheduled.compareAndSet(false, true)) {
+        definition.actionExecutor.execute(this);
       }
     }
-  }
 
-  private class PendingEvent {
+    @Override
+    public void run() {
+      ActionBatch batch = batches.peek();
+
+      if (batch != null) {
+        boolean executed;
 
-    final E event;
-    final Consumer<S> stateConsumer;
+        // the machine may be suspended waiting for this batch
+        MachineTasks tasks = enterMachineTask();
+        try {
+          executed = batch.execute(this);
+        } finally {
+          tasks.exit();
+        }
 
-    PendingEvent(E event, Consumer<S> stateConsumer) {
-      this.event = event;
-      this.stateConsumer = stateConsumer;
+        if (!executed) {
+          // scheduled remains true; resubmitted once the AsyncAction completes
+          return;
+        }
+
+        batches.poll();
+
+        if (batch.executed != null) {
+          batch.executed.complete(null);
+        }
+      }
+
+      if (!batches.isEmpty()) {
+        definition.actionExecutor.execute(this);
+      } else {
+        scheduled.set(false);
+
+        // a batch submitted after the check above saw scheduled still set
+        if (!batches.isEmpty() && scheduled.compareAndSet(false, true)) {
+          definition.actionExecutor.execute(this);
+        }
+      }
     }
+
   }
 
   private class PollAndEvaluate implements Runnable {
 
     @Override
     public void run() {
-      PendingEvent pending;
+      // a task on the virtual thread executor has its thread to itself, so it keeps evaluating
+      // instead of starting a new thread for each event.
+      boolean keepThread = VirtualThreads.isExecutor(executor);
+      boolean suspended;
 
-      synchronized (queueLock) {
-        pending = eventQueue.poll();
+      MachineTasks tasks = enterMachineTask();
+      try {
+        do {
+          suspended = definition.eventBatching.isEnabled()
+              ? drainBatch()
+              : pollAndEvaluate();
+        } while (keepThread && !suspended && hasPendingEvents());
+      } finally {
+        tasks.exit();
+      }
 
-        if (pending == null) {
-          return;
+      if (suspended) {
+        // pollScheduled remains true; this task is resubmitted once the AsyncAction completes
+        return;
+      }
+
+      if (hasPendingEvents()) {
+        // pollScheduled remains true
+        executor.execute(this);
+      } else {
+        pollScheduled = false;
+
+        // an event offered after the check above saw pollScheduled still set and left the
+        // scheduling to us.
+        if (hasPendingEvents()) {
+          maybeExecutePoll();
         }
       }
+    }
 
-      E event = pending.event;
+    /**
+     * Evaluate the next queued event, or resume the suspended one.
+     *
+     * @return {@code true} if evaluation was suspended by an {@link AsyncAction}.
+     */
+    private boolean pollAndEvaluate() {
+      PendingEvent pending;
+      S completedState;
+      boolean suspended = false;
 
+      long stamp = lock.writeLock();
       try {
-        readWriteLock.writeLock().lock();
+        Suspension s = suspension;
 
-        S currState = state.get();
-        S nextState = currState;
+        if (s != null) {
+          suspension = null;
+          pending = s.pending;
 
-        var ctx = new FsmContextImpl();
-
-        for (Transition<S, E> transition : transitions) {
-          if (transition.matches(ctx, currState, event)) {
-            nextState = transition.target();
-            break;
+          if (resume(s)) {
+            return true;
           }
-        }
+        } else {
+          pending = pollPendingEvent();
 
-        state.set(nextState);
+          if (pending == null) {
+            return false;
+          }
+          if (evaluate(pending)) {
+            if (suspension.pending != null) {
+              // completed once its remaining actions have been executed
+              return true;
+            }
 
-        if (logger.isDebugEnabled()) {
-          mdc.forEach(MDC::put);
-          try {
-            logger.debug(
-                "{} x {} = {}",
-                padRight(String.format("S(%s)", currState)),
-                padRight(String.format("E(%s)", event)),
-                padRight(String.format("S'(%s)", nextState))
-            );
-          } finally {
-            mdc.keySet().forEach(MDC::remove);
+            // only its pipelined actions are awaited
+            suspended = true;
           }
         }
 
-        var actionContext = new ActionContextImpl(
-            currState,
-            nextState,
-            event
-        );
+        // once unlocked, a resumed PollAndEvaluate may already be evaluating the next event
+        completedState = state;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
 
-        var matchingActions = new ArrayList<TransitionAction<S, E>>();
+      if (pending != null) {
+        completePendingEvent(pending, completedState);
+      }
 
-        for (TransitionAction<S, E> transitionAction : transitionActions) {
-          if (transitionAction.matches(currState, nextState, event)) {
-            matchingActions.add(transitionAction);
-          }
-        }
+      return suspended;
+    }
 
-        if (logger.isTraceEnabled()) {
-          mdc.forEach(MDC::put);
-          try {
-            logger.trace("found {} matching TransitionActions", matchingActions.size());
-          } finally {
-            mdc.keySet().forEach(MDC::remove);
+    /**
+     * Evaluate queued events back-to-back until the queue is empty, a limit configured by
+     * {@link EventBatching} is reached, or an {@link AsyncAction} suspends evaluation.
+     *
+     * <p>Events without a callback are evaluated under one hold of the write lock. The lock is
+     * released to notify an event's callback, as in {@link #pollAndEvaluate()}, so each callback
+     * is notified before the next event is evaluated.
+     *
+     * @return {@code true} if evaluation was suspended by an {@link AsyncAction}.
+     */
+    private boolean drainBatch() {
+      int maxEvents = definition.eventBatching.maxEvents();
+      long maxNanos = definition.eventBatching.maxNanos();
+      long startNanos = maxNanos > 0 ? System.nanoTime() : 0L;
+
+      int evaluated = 0;
+      boolean exhausted = false;
+
+      while (true) {
+        PendingEvent completed = null;
+        S completedState = null;
+        boolean suspended = false;
+
+        long stamp = lock.writeLock();
+        try {
+          Suspension s = suspension;
+
+          if (s != null) {
+            suspension = null;
+
+            if (resume(s)) {
+              return true;
+            }
+            if (s.pending != null) {
+              completed = s.pending;
+              completedState = state;
+            }
           }
-        }
 
-        matchingActions.forEach(transitionAction -> {
-          try {
-            if (actionProxy == null) {
-              if (logger.isTraceEnabled()) {
-                mdc.forEach(MDC::put);
-                try {
-                  logger.trace("executing TransitionAction: {}", transitionAction);
-                } finally {
-                  mdc.keySet().forEach(MDC::remove);
-                }
-              }
+          while (completed == null && !suspended && !exhausted) {
+            PendingEvent pending = pollPendingEvent();
 
-              transitionAction.execute(actionContext);
-            } else {
-              if (logger.isTraceEnabled()) {
-                mdc.forEach(MDC::put);
-                try {
-                  logger.trace("executing (via proxy) TransitionAction: {}", transitionAction);
-                } finally {
-                  mdc.keySet().forEach(MDC::remove);
-                }
+            if (pending == null) {
+              exhausted = true;
+              break;
+            }
+            if (evaluate(pending)) {
+              if (suspension.pending != null) {
+                // completed once its remaining actions have been executed
+                return true;
               }
 
-              actionProxy.execute(actionContext, transitionAction::execute);
+              // only its pipelined actions are awaited
+              suspended = true;
             }
-          } catch (Throwable ex) {
 
-            mdc.forEach(MDC::put);
-            try {
-              logger.warn("uncaught Throwable executing TransitionAction: {}",
-                  transitionAction, ex);
-            } finally {
-              mdc.keySet().forEach(MDC::remove);
+            if (pending.stateConsumer != null || pending.completion != null) {
+              // notified once unlocked, before the next event is evaluated
+              completed = pending;
+              completedState = state;
+            } else {
+              completePendingEvent(pending, state);
             }
+
+            exhausted = ++evaluated >= maxEvents
+                || maxNanos > 0 && System.nanoTime() - startNanos >= maxNanos;
           }
-        });
+        } finally {
+          lock.unlockWrite(stamp);
+        }
 
-      } finally {
-        readWriteLock.writeLock().unlock();
+        if (completed != null) {
+          completePendingEvent(completed, completedState);
+        }
+        if (suspended || exhausted) {
+          return suspended;
+        }
       }
+    }
+
+    /**
+     * Evaluate {@code pending} and execute the matching actions.
+     *
+     * @return {@code true} if evaluation was suspended by an {@link AsyncAction}.
+     */
+    private boolean evaluate(PendingEvent pending) {
+      E event = pending.event;
 
-      if (pending.stateConsumer != null) {
-        pending.stateConsumer.accept(state.get());
+      S currState = state;
+      S nextState = definition.transitionResolver.resolve(context(), currState, event);
+
+      long version = stateVersion;
+      stateVersion = version + 1L;
+      state = nextState;
+      stateVersion = version + 2L;
+
+      if (!definition.stateTimeouts.isEmpty() && !Objects.equals(currState, nextState)) {
+        cancelStateTimeouts();
+        scheduleStateTimeouts(nextState);
       }
 
-      synchronized (queueLock) {
-        if (eventQueue.isEmpty()) {
-          pollExecuted = false;
-        } else {
-          // pollExecuted remains true
-          executor.execute(new PollAndEvaluate());
+      Logger logger = definition.logger;
+      Map<String, String> mdc = definition.mdc;
+
+      if (logger.isDebugEnabled()) {
+        mdc.forEach(MDC::put);
+        try {
+          logger.debug(transitionMessage(currState, event, nextState));
+        } finally {
+          mdc.keySet().forEach(MDC::remove);
         }
       }
+
+      List<TransitionAction<S, E>> matchingActions =
+          definition.transitionActionResolver.resolve(currState, nextState, event);
+
+      if (logger.isTraceEnabled()) {
+        mdc.forEach(MDC::put);
+        try {
+          logger.trace("found {} matching TransitionActions", matchingActions.size());
+        } finally {
+          mdc.keySet().forEach(MDC::remove);
+        }
+      }
+
+      if (definition.actionExecutor != null) {
+        return pipelineActions(pending, currState, nextState, matchingActions);
+      } else {
+        return executeActions(pending, currState, nextState, matchingActions, 0);
+      }
+    }
+
+    /**
+     * Hand {@code actions} to the {@link ActionPipeline}. Unless every one of them is a
+     * {@link PipelinedTransitionAction}, evaluation is suspended until they have executed, with a
+     * {@link Suspension} that has no PendingEvent: {@code pending} is left to the caller to
+     * complete right away, once it has released the write lock.
+     *
+     * @return {@code true} if evaluation was suspended.
+     */
+    private boolean pipelineActions(
+        PendingEvent pending,
+        S from,
+        S to,
+        List<TransitionAction<S, E>> actions
+    ) {
+
+      if (actions.isEmpty()) {
+        return false;
+      }
+
+      boolean pipelined = true;
+      for (int i = 0; i < actions.size() && pipelined; i++) {
+        pipelined = actions.get(i) instanceof PipelinedTransitionAction;
+      }
+
+      var batch = new ActionBatch(
+          from,
+          to,
+          pending.event,
+          actions,
+          pipelined ? null : new CompletableFuture<>()
+      );
+
+      actionPipeline().submit(batch);
+
+      if (pipelined) {
+        return false;
+      }
+
+      // the event itself is completed by the caller once it releases the write lock
+      suspension = new Suspension(null, from, to, actions, actions.size());
+      batch.executed.whenComplete((r, ex) -> executor.execute(this));
+
+      return true;
+    }
+
+    private boolean resume(Suspension suspended) {
+      if (suspended.pending == null) {
+        // the pipelined actions it was waiting for have executed
+        return false;
+      }
+
+      return executeActions(
+          suspended.pending,
+          suspended.from,
+          suspended.to,
+          suspended.actions,
+          suspended.nextAction
+      );
+    }
+
+    /**
+     * Execute {@code actions} starting at index {@code first}, suspending evaluation if an
+     * {@link AsyncAction} returns a stage that isn't complete yet.
+     *
+     * @return {@code true} if evaluation was suspended.
+     */
+    private boolean executeActions(
+        PendingEvent pending,
+        S from,
+        S to,
+        List<TransitionAction<S, E>> actions,
+        int first
+    ) {
+
+      ActionContextImpl context = context();
+      context.reset(from, to, pending.event);
+
+      for (int i = first; i < actions.size(); ) {
+        TransitionAction<S, E> transitionAction = actions.get(i);
+
+        int end = stepEnd(actions, i);
+        CompletionStage<?> stage = executeStep(context, actions, i, end);
+        i = end;
+
+        if (stage != null && suspendOn(stage, transitionAction, executor, this)) {
+          // the write lock is held until we return, so the resumed task can't miss this
+          suspension = new Suspension(pending, from, to, actions, end);
+
+          // the suspended action keeps this context, so its continuations can use it; the
+          // remaining actions and later events get a new one
+          StrictMachine.this.context = null;
+          return true;
+        }
+      }
+
+      context.reset(null, null, null);
+      return false;
+    }
+
+    private String transitionMessage(S currState, E event, S nextState) {
+      StringBuilder sb = logBuilder;
+
+      if (sb == null) {
+        sb = logBuilder = new StringBuilder();
+      } else {
+        sb.setLength(0);
+      }
+
+      appendPadded(sb, "S(", currState);
+      sb.append(" x ");
+      appendPadded(sb, "E(", event);
+      sb.append(" = ");
+      appendPadded(sb, "S'(", nextState);
+
+      return sb.toString();
     }
+
   }
 
   private static final int PADDING = 24;
 
-  private static String padRight(String s) {
-    return String.format("%1$-" + PADDING + "s", s);
+  private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private static final int PENDING_EVENT_POOL_SIZE = 16;
+
+  private static final Object[] NO_SLOT_VALUES = new Object[0];
+
+  private static final long[] NO_PRIMITIVE_SLOT_VALUES = new long[0];
+
+  private static final VarHandle POLL_SCHEDULED;
+
+  private static final VarHandle PRIMITIVE_VALUES;
+
+  private static final VarHandle COALESCIBLE_EVENTS;
+
+  /**
+   * The machines whose tasks the current thread is running, innermost last: evaluating events and
+   * notifying their callbacks, or executing actions offloaded while a machine waits for them.
+   * Such a thread never waits for room in one of these machines' full event queues, since the
+   * machine it would wait for may be waiting for it.
+   */
+  private static final ThreadLocal<MachineTasks> MACHINE_TASKS =
+      ThreadLocal.withInitial(MachineTasks::new);
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+      POLL_SCHEDULED = lookup.findVarHandle(StrictMachine.class, "pollScheduled", boolean.class);
+      PRIMITIVE_VALUES = lookup.findVarHandle(StrictMachine.class, "primitiveValues", Map.class);
+      COALESCIBLE_EVENTS =
+          lookup.findVarHandle(StrictMachine.class, "coalescibleEvents", Map.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * Mark the current thread as running a task of this machine until {@link MachineTasks#exit()}
+   * is called on the result.
+   */
+  private MachineTasks enterMachineTask() {
+    MachineTasks tasks = MACHINE_TASKS.get();
+    tasks.enter(this);
+    return tasks;
+  }
+
+  private static void appendPadded(StringBuilder sb, String prefix, Object value) {
+    int start = sb.length();
+
+    sb.append(prefix).append(value).append(')');
+
+    while (sb.length() - start < PADDING) {
+      sb.append(' ');
+    }
+  }
+
+  /**
+   * A stack of the machines whose tasks a thread is running; nested only when a machine's
+   * executor runs tasks on the calling thread.
+   */
+  private static final class MachineTasks {
+
+    StrictMachine<?, ?>[] machines = new StrictMachine<?, ?>[2];
+    int depth;
+
+    void enter(StrictMachine<?, ?> machine) {
+      if (depth == machines.length) {
+        machines = Arrays.copyOf(machines, depth * 2);
+      }
+      machines[depth++] = machine;
+    }
+
+    void exit() {
+      machines[--depth] = null;
+    }
+
   }
 
   private class FsmContextImpl implements FsmContext<S, E> {
@@ -290,67 +2015,177 @@ public class StrictMachine<S, E> implements Fsm<S, E> {
       StrictMachine.this.fireEvent(event);
     }
 
+    @Override
+    public boolean tryFireEvent(E event) {
+      return StrictMachine.this.tryFireEvent(event);
+    }
+
+    @Override
+    public Timeout fireEventAfter(E event, Duration delay) {
+      return StrictMachine.this.fireEventAfter(event, delay);
+    }
+
     @Override
     public void shelveEvent(E event) {
+      long stamp = lock.writeLock();
       try {
-        readWriteLock.writeLock().lock();
+        PendingEvent pending = new PendingEvent();
+        pending.event = event;
+
+        if (eventShelf == null) {
+          eventShelf = new ArrayDeque<>();
+        }
 
-        eventShelf.add(new PendingEvent(event, s -> {}));
+        eventShelf.add(pending);
       } finally {
-        readWriteLock.writeLock().unlock();
+        lock.unlockWrite(stamp);
       }
     }
 
     @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public void processShelvedEvents() {
+      long stamp = lock.writeLock();
       try {
-        readWriteLock.writeLock().lock();
+        if (eventShelf == null || eventShelf.isEmpty()) {
+          return;
+        }
+
+        ConcurrentLinkedDeque<PendingEvent>[] reinjected = reinjectedEvents;
 
-        synchronized (queueLock) {
-          while (!eventShelf.isEmpty()) {
-            eventQueue.addFirst(eventShelf.removeLast());
+        if (reinjected == null) {
+          reinjected = new ConcurrentLinkedDeque[definition.priorityLanes];
+          for (int i = 0; i < reinjected.length; i++) {
+            reinjected[i] = new ConcurrentLinkedDeque<>();
           }
+          reinjectedEvents = reinjected;
+        }
 
-          maybeExecutePoll();
+        while (!eventShelf.isEmpty()) {
+          PendingEvent pending = eventShelf.removeLast();
+
+          reinjected[laneOf(pending.event)].addFirst(pending);
         }
       } finally {
-        readWriteLock.writeLock().unlock();
+        lock.unlockWrite(stamp);
       }
+
+      maybeExecutePoll();
     }
 
     @Override
     public Object get(Key<?> key) {
-      try {
-        readWriteLock.readLock().lock();
+      long stamp = lock.tryOptimisticRead();
+
+      if (stamp != 0L) {
+        Object value = getContextValue(key);
+
+        if (lock.validate(stamp)) {
+          return value;
+        }
+      }
 
-        return contextValues.get(key);
+      stamp = lock.readLock();
+      try {
+        return getContextValue(key);
       } finally {
-        readWriteLock.readLock().unlock();
+        lock.unlockRead(stamp);
       }
     }
 
     @Override
     public Object remove(Key<?> key) {
+      long stamp = lock.writeLock();
       try {
-        readWriteLock.writeLock().lock();
-
-        return contextValues.remove(key);
+        return removeContextValue(key);
       } finally {
-        readWriteLock.writeLock().unlock();
+        lock.unlockWrite(stamp);
       }
     }
 
     @Override
     public void set(Key<?> key, Object value) {
+      long stamp = lock.writeLock();
       try {
-        readWriteLock.writeLock().lock();
-
-        contextValues.put(key, value);
+        setContextValue(key, value);
       } finally {
-        readWriteLock.writeLock().unlock();
+        lock.unlockWrite(stamp);
       }
     }
 
+    @Override
+    public long getLong(LongKey key) {
+      return getPrimitive(key, definition.contextLayout.slot(key));
+    }
+
+    @Override
+    public int getInt(IntKey key) {
+      return (int) getPrimitive(key, definition.contextLayout.slot(key));
+    }
+
+    @Override
+    public void setLong(LongKey key, long value) {
+      setPrimitive(key, definition.contextLayout.slot(key), value);
+    }
+
+    @Override
+    public void setInt(IntKey key, int value) {
+      setPrimitive(key, definition.contextLayout.slot(key), value);
+    }
+
+    @Override
+    public long addAndGet(LongKey key, long delta) {
+      return getAndAddPrimitive(key, definition.contextLayout.slot(key), delta) + delta;
+    }
+
+    @Override
+    public int addAndGet(IntKey key, int delta) {
+      return (int) getAndAddPrimitive(key, definition.contextLayout.slot(key), delta) + delta;
+    }
+
+    @Override
+    public boolean compareAndSet(LongKey key, long expect, long update) {
+      return compareAndSetPrimitive(key, definition.contextLayout.slot(key), expect, update);
+    }
+
+    @Override
+    public boolean compareAndSet(IntKey key, int expect, int update) {
+      return compareAndSetPrimitive(key, definition.contextLayout.slot(key), expect, update);
+    }
+
+    @Override
+    public Object getUserContext() {
+      return userContext;
+    }
+
+  }
+
+  /**
+   * The context handed to {@link #readContext(Function)}, used while the read lock is held.
+   */
+  private class ReadOnlyContextImpl implements ReadOnlyFsmContext<S> {
+
+    @Override
+    public S currentState() {
+      return state;
+    }
+
+    @Override
+    public Object get(FsmContext.Key<?> key) {
+      // nested read lock acquisitions could deadlock behind a waiting writer
+      return getContextValue(key);
+    }
+
+    @Override
+    public long getLong(FsmContext.LongKey key) {
+      return getPrimitive(key, definition.contextLayout.slot(key));
+    }
+
+    @Override
+    public int getInt(FsmContext.IntKey key) {
+      return (int) getPrimitive(key, definition.contextLayout.slot(key));
+    }
+
     @Override
     public Object getUserContext() {
       return userContext;
@@ -358,13 +2193,18 @@ public class StrictMachine<S, E> implements Fsm<S, E> {
 
   }
 
+  /**
+   * The {@link ActionContext} handed to each {@link TransitionAction}; a single instance is
+   * reset and reused for every evaluated event, until an {@link AsyncAction} suspends evaluation
+   * and keeps it.
+   */
   private class ActionContextImpl extends FsmContextImpl implements ActionContext<S, E> {
 
-    private final S from;
-    private final S to;
-    private final E event;
+    private S from;
+    private S to;
+    private E event;
 
-    ActionContextImpl(S from, S to, E event) {
+    void reset(S from, S to, E event) {
       this.from = from;
       this.to = to;
       this.event = event;
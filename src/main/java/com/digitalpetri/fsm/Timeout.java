@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+/**
+ * A handle to a task scheduled on a {@link HashedWheelTimer}.
+ */
+public interface Timeout {
+
+  /**
+   * Cancel the task if it hasn't run yet.
+   *
+   * @return {@code true} if the task was cancelled; {@code false} if it already ran or was
+   *     already cancelled.
+   */
+  boolean cancel();
+
+  /**
+   * Check whether the task was cancelled.
+   *
+   * @return {@code true} if the task was cancelled.
+   */
+  boolean isCancelled();
+
+  /**
+   * Check whether the delay elapsed and the task ran, or is running.
+   *
+   * @return {@code true} if the delay elapsed and the task ran, or is running.
+   */
+  boolean isExpired();
+
+}
@@ -11,6 +11,9 @@
 package com.digitalpetri.fsm.dsl;
 
 import java.util.LinkedList;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -21,17 +24,24 @@ public class ActionBuilder<S, E> {
   private Predicate<E> via;
   private final LinkedList<TransitionAction<S, E>> transitionActions;
 
+  /**
+   * Called after each change to the definition being built.
+   */
+  private final Runnable onChange;
+
   ActionBuilder(
       Predicate<S> from,
       Predicate<S> to,
       Predicate<E> via,
-      LinkedList<TransitionAction<S, E>> transitionActions
+      LinkedList<TransitionAction<S, E>> transitionActions,
+      Runnable onChange
   ) {
 
     this.from = from;
     this.to = to;
     this.via = via;
     this.transitionActions = transitionActions;
+    this.onChange = onChange;
   }
 
   /**
@@ -46,6 +56,32 @@ public class ActionBuilder<S, E> {
     return executeLast(action);
   }
 
+  /**
+   * Add {@code action}, tagged with {@code executionTag}, to the end of the list of
+   * {@link TransitionAction}s to be executed.
+   *
+   * <p>Actions are executed in the order they appear in the list, whichever thread they execute
+   * on.
+   *
+   * @param action the action to execute.
+   * @param executionTag the {@link ExecutionTag} selecting where {@code action} executes.
+   * @return this {@link ActionBuilder}.
+   */
+  public ActionBuilder<S, E> execute(Action<S, E> action, ExecutionTag executionTag) {
+    transitionActions.addLast(
+        new PredicatedTransitionAction<>(
+            from,
+            to,
+            via,
+            action::execute,
+            executionTag
+        )
+    );
+    onChange.run();
+
+    return this;
+  }
+
   /**
    * Add {@code action} to the end of the list of {@link TransitionAction}s to be executed.
    *
@@ -63,6 +99,7 @@ public class ActionBuilder<S, E> {
             action::execute
         )
     );
+    onChange.run();
 
     return this;
   }
@@ -84,16 +121,112 @@ public class ActionBuilder<S, E> {
             action::execute
         )
     );
+    onChange.run();
 
     return this;
   }
 
-  private static class PredicatedTransitionAction<S, E> implements TransitionAction<S, E> {
+  /**
+   * Add {@code action} to the end of the list of {@link TransitionAction}s to be executed.
+   *
+   * <p>The machine waits for the {@link CompletionStage} returned by {@code action} to complete
+   * before executing the next action or evaluating the next event, without holding a thread or
+   * its lock in the meantime.
+   *
+   * @param action the action to execute.
+   * @return this {@link ActionBuilder}.
+   * @see AsyncAction
+   */
+  public ActionBuilder<S, E> executeAsync(AsyncAction<S, E> action) {
+    transitionActions.addLast(
+        new PredicatedAsyncTransitionAction<>(
+            from,
+            to,
+            via,
+            action
+        )
+    );
+    onChange.run();
+
+    return this;
+  }
+
+  /**
+   * Add {@code action} to the end of the list of {@link TransitionAction}s to be executed, marked
+   * as insensitive to the order in which it reads the machine's state and context.
+   *
+   * <p>When actions are pipelined, the machine may evaluate later events, changing its state and
+   * context, while {@code action} executes. Otherwise it executes like any other action.
+   *
+   * @param action the action to execute.
+   * @return this {@link ActionBuilder}.
+   * @see PipelinedTransitionAction
+   * @see FsmBuilder#setActionPipelining(java.util.concurrent.Executor)
+   */
+  public ActionBuilder<S, E> executePipelined(Action<S, E> action) {
+    transitionActions.addLast(
+        new PredicatedPipelinedTransitionAction<>(
+            from,
+            to,
+            via,
+            action::execute
+        )
+    );
+    onChange.run();
+
+    return this;
+  }
+
+  /**
+   * Add {@code action} to the end of the list of {@link TransitionAction}s to be executed, marked
+   * as independent of the actions next to it.
+   *
+   * <p>Consecutive independent actions execute concurrently on the
+   * {@link ForkJoinPool#commonPool() common pool}, and the next action executes once all of them
+   * have finished. An independent action with no independent neighbor executes like any other.
+   *
+   * @param action the action to execute.
+   * @return this {@link ActionBuilder}.
+   * @see ParallelTransitionAction
+   */
+  public ActionBuilder<S, E> executeParallel(Action<S, E> action) {
+    return executeParallel(action, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Add {@code action} to the end of the list of {@link TransitionAction}s to be executed, marked
+   * as independent of the actions next to it.
+   *
+   * <p>Consecutive independent actions execute concurrently, each on its own executor, and the
+   * next action executes once all of them have finished.
+   *
+   * @param action the action to execute.
+   * @param executor the {@link Executor} to execute {@code action} on.
+   * @return this {@link ActionBuilder}.
+   * @see ParallelTransitionAction
+   */
+  public ActionBuilder<S, E> executeParallel(Action<S, E> action, Executor executor) {
+    transitionActions.addLast(
+        new PredicatedParallelTransitionAction<>(
+            from,
+            to,
+            via,
+            action::execute,
+            executor
+        )
+    );
+    onChange.run();
+
+    return this;
+  }
+
+  static class PredicatedTransitionAction<S, E> implements TransitionAction<S, E> {
 
     private final Predicate<S> from;
     private final Predicate<S> to;
     private final Predicate<E> via;
     private final Consumer<ActionContext<S, E>> action;
+    private final ExecutionTag executionTag;
 
     PredicatedTransitionAction(
         Predicate<S> from,
@@ -102,10 +235,22 @@ public class ActionBuilder<S, E> {
         Consumer<ActionContext<S, E>> action
     ) {
 
+      this(from, to, via, action, ExecutionTag.INLINE);
+    }
+
+    PredicatedTransitionAction(
+        Predicate<S> from,
+        Predicate<S> to,
+        Predicate<E> via,
+        Consumer<ActionContext<S, E>> action,
+        ExecutionTag executionTag
+    ) {
+
       this.from = from;
       this.to = to;
       this.via = via;
       this.action = action;
+      this.executionTag = executionTag;
     }
 
     @Override
@@ -118,6 +263,84 @@ public class ActionBuilder<S, E> {
       return this.from.test(from) && this.to.test(to) && this.via.test(event);
     }
 
+    @Override
+    public ExecutionTag executionTag() {
+      return executionTag;
+    }
+
+    Predicate<E> getVia() {
+      return via;
+    }
+
+  }
+
+  static class PredicatedAsyncTransitionAction<S, E> extends PredicatedTransitionAction<S, E>
+      implements AsyncTransitionAction<S, E> {
+
+    private final AsyncAction<S, E> action;
+
+    PredicatedAsyncTransitionAction(
+        Predicate<S> from,
+        Predicate<S> to,
+        Predicate<E> via,
+        AsyncAction<S, E> action
+    ) {
+
+      super(from, to, via, action::execute);
+
+      this.action = action;
+    }
+
+    @Override
+    public CompletionStage<?> executeAsync(ActionContext<S, E> context) {
+      return action.execute(context);
+    }
+
+    @Override
+    public void execute(ActionContext<S, E> context) {
+      action.execute(context);
+    }
+
+  }
+
+  static class PredicatedPipelinedTransitionAction<S, E> extends PredicatedTransitionAction<S, E>
+      implements PipelinedTransitionAction<S, E> {
+
+    PredicatedPipelinedTransitionAction(
+        Predicate<S> from,
+        Predicate<S> to,
+        Predicate<E> via,
+        Consumer<ActionContext<S, E>> action
+    ) {
+
+      super(from, to, via, action);
+    }
+
+  }
+
+  static class PredicatedParallelTransitionAction<S, E> extends PredicatedTransitionAction<S, E>
+      implements ParallelTransitionAction<S, E> {
+
+    private final Executor executor;
+
+    PredicatedParallelTransitionAction(
+        Predicate<S> from,
+        Predicate<S> to,
+        Predicate<E> via,
+        Consumer<ActionContext<S, E>> action,
+        Executor executor
+    ) {
+
+      super(from, to, via, action);
+
+      this.executor = executor;
+    }
+
+    @Override
+    public Executor executor() {
+      return executor;
+    }
+
   }
 
 }
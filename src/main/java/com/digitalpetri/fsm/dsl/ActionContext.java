@@ -18,6 +18,9 @@ import com.digitalpetri.fsm.FsmContext;
  * <p>Provides access to the transition criteria: the from state, to state, and event that triggered
  * the transition.
  *
+ * <p>An ActionContext is only valid while the {@link Action} it was passed to is executing; the
+ * {@link com.digitalpetri.fsm.Fsm} reuses it for subsequent transitions.
+ *
  * @param <S> state type
  * @param <E> event type
  */
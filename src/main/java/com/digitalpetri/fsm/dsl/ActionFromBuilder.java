@@ -18,10 +18,17 @@ public class ActionFromBuilder<S extends Enum<S>, E> {
 
   private final Predicate<S> fromFilter;
   private final LinkedList<TransitionAction<S, E>> transitionActions;
+  private final Runnable onChange;
+
+  ActionFromBuilder(
+      Predicate<S> fromFilter,
+      LinkedList<TransitionAction<S, E>> transitionActions,
+      Runnable onChange
+  ) {
 
-  ActionFromBuilder(Predicate<S> fromFilter, LinkedList<TransitionAction<S, E>> transitionActions) {
     this.fromFilter = fromFilter;
     this.transitionActions = transitionActions;
+    this.onChange = onChange;
   }
 
   public ViaBuilder<S, E> to(S state) {
@@ -32,7 +39,8 @@ public class ActionFromBuilder<S extends Enum<S>, E> {
     return new ViaBuilder<>(
         fromFilter,
         toFilter,
-        transitionActions
+        transitionActions,
+        onChange
     );
   }
 
@@ -18,10 +18,17 @@ public class ActionToBuilder<S extends Enum<S>, E> {
 
   private final Predicate<S> toFilter;
   private final LinkedList<TransitionAction<S, E>> transitionActions;
+  private final Runnable onChange;
+
+  ActionToBuilder(
+      Predicate<S> toFilter,
+      LinkedList<TransitionAction<S, E>> transitionActions,
+      Runnable onChange
+  ) {
 
-  ActionToBuilder(Predicate<S> toFilter, LinkedList<TransitionAction<S, E>> transitionActions) {
     this.toFilter = toFilter;
     this.transitionActions = transitionActions;
+    this.onChange = onChange;
   }
 
   public ViaBuilder<S, E> from(S from) {
@@ -32,7 +39,8 @@ public class ActionToBuilder<S extends Enum<S>, E> {
     return new ViaBuilder<>(
         fromFilter,
         toFilter,
-        transitionActions
+        transitionActions,
+        onChange
     );
   }
 
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An {@link Action} that completes asynchronously.
+ *
+ * <p>The machine doesn't evaluate another event, or execute the next action of the same
+ * transition, until the returned {@link CompletionStage} completes, but it releases its thread
+ * and lock while waiting, so the context can be read and modified in the meantime.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+@FunctionalInterface
+public interface AsyncAction<S, E> {
+
+  /**
+   * Start executing this action.
+   *
+   * <p>{@code context} remains valid after this method returns, so continuations of the returned
+   * stage may use it: {@link ActionContext#from()}, {@link ActionContext#to()}, and
+   * {@link ActionContext#event()} keep their values, and its other methods take the machine's
+   * lock like those of {@link com.digitalpetri.fsm.Fsm#withContext}.
+   *
+   * @param context the {@link ActionContext}.
+   * @return a {@link CompletionStage} that completes when the action is done; {@code null} if it
+   *     completed synchronously. Exceptional completion is logged like a thrown exception.
+   */
+  CompletionStage<?> execute(ActionContext<S, E> context);
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A {@link TransitionAction} backed by an {@link AsyncAction}; the machine suspends evaluation
+ * until the {@link CompletionStage} returned by {@link #executeAsync(ActionContext)} completes.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+public interface AsyncTransitionAction<S, E> extends TransitionAction<S, E> {
+
+  /**
+   * Start executing the {@link AsyncAction} backing this TransitionAction.
+   *
+   * @param context the {@link ActionContext}.
+   * @return a {@link CompletionStage} that completes when the action is done; {@code null} if it
+   *     completed synchronously.
+   */
+  CompletionStage<?> executeAsync(ActionContext<S, E> context);
+
+  /**
+   * Start executing the {@link AsyncAction} backing this TransitionAction without waiting for it
+   * to complete.
+   *
+   * @param context the {@link ActionContext}.
+   */
+  @Override
+  default void execute(ActionContext<S, E> context) {
+    executeAsync(context);
+  }
+
+}
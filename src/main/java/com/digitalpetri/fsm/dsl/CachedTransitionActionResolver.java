@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * A {@link TransitionActionResolver} that lazily caches the {@link TransitionAction}s matching a
+ * (from, to, event) triple.
+ *
+ * <p>Events equal to an event instance used in an action definition are cached by instance; all
+ * other events are cached by class. TransitionActions defined with an event {@link Predicate} or
+ * added manually via {@link FsmBuilder#addTransitionAction(TransitionAction)} are kept in the
+ * cached entry at their original position but are re-tested on every resolution.
+ *
+ * <p>Instances are safe to share between every {@link com.digitalpetri.fsm.Fsm} built from the
+ * same definition.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+class CachedTransitionActionResolver<S extends Enum<S>, E>
+    implements TransitionActionResolver<S, E> {
+
+  static final int DEFAULT_MAX_ENTRIES = 4096;
+
+  private static final TransitionAction<?, ?>[] NO_ACTIONS = new TransitionAction<?, ?>[0];
+
+  private final AtomicInteger entries = new AtomicInteger(0);
+
+  private final TransitionAction<S, E>[] actions;
+  private final boolean[] dynamic;
+  private final Set<Object> instanceKeys;
+  private final int stateCount;
+  private final int maxEntries;
+  private final AtomicReferenceArray<Cell<S, E>> cells;
+
+  @SuppressWarnings("unchecked")
+  CachedTransitionActionResolver(
+      Class<S> stateType,
+      List<TransitionAction<S, E>> transitionActions,
+      int maxEntries
+  ) {
+
+    this.actions = transitionActions.toArray(emptyActions());
+    this.dynamic = new boolean[actions.length];
+    this.instanceKeys = new HashSet<>();
+
+    for (int i = 0; i < actions.length; i++) {
+      Predicate<E> via = eventFilter(actions[i]);
+
+      if (via instanceof Predicates.EqualTo) {
+        instanceKeys.add(((Predicates.EqualTo<E>) via).value());
+      } else {
+        dynamic[i] = !(via instanceof Predicates.ClassOf) && !(via instanceof Predicates.Any);
+      }
+    }
+
+    this.stateCount = stateType.getEnumConstants().length;
+    this.maxEntries = maxEntries;
+    this.cells = new AtomicReferenceArray<>(stateCount * stateCount);
+  }
+
+  @Override
+  public List<TransitionAction<S, E>> resolve(S from, S to, E event) {
+    if (actions.length == 0) {
+      return List.of();
+    }
+
+    if (from == null || to == null || event == null) {
+      return compute(from, to, event).actions(from, to, event);
+    }
+
+    Cell<S, E> cell = cell(from, to);
+
+    Dispatch<S, E> dispatch;
+
+    if (instanceKeys.contains(event)) {
+      dispatch = cell.byInstance.get(event);
+
+      if (dispatch == null) {
+        dispatch = compute(from, to, event);
+        cache(cell.byInstance, event, dispatch);
+      } else if (dispatch.eventType != event.getClass()) {
+        // equal to a cached event, but of a different class; resolve without the cache.
+        dispatch = compute(from, to, event);
+      }
+    } else {
+      dispatch = cell.byClass.get(event.getClass());
+
+      if (dispatch == null) {
+        dispatch = compute(from, to, event);
+        cache(cell.byClass, event.getClass(), dispatch);
+      }
+    }
+
+    return dispatch.actions(from, to, event);
+  }
+
+  /**
+   * Get the number of entries currently cached.
+   *
+   * @return the number of entries currently cached.
+   */
+  int size() {
+    return entries.get();
+  }
+
+  private Cell<S, E> cell(S from, S to) {
+    int index = from.ordinal() * stateCount + to.ordinal();
+
+    Cell<S, E> cell = cells.get(index);
+
+    if (cell == null) {
+      cells.compareAndSet(index, null, new Cell<>());
+      cell = cells.get(index);
+    }
+
+    return cell;
+  }
+
+  private <K> void cache(Map<K, Dispatch<S, E>> map, K key, Dispatch<S, E> dispatch) {
+    if (entries.incrementAndGet() <= maxEntries) {
+      if (map.putIfAbsent(key, dispatch) != null) {
+        entries.decrementAndGet();
+      }
+    } else {
+      entries.decrementAndGet();
+    }
+  }
+
+  private Dispatch<S, E> compute(S from, S to, E event) {
+    var candidates = new ArrayList<TransitionAction<S, E>>();
+    var verify = new boolean[actions.length];
+    boolean anyDynamic = false;
+
+    for (int i = 0; i < actions.length; i++) {
+      if (dynamic[i]) {
+        verify[candidates.size()] = true;
+        candidates.add(actions[i]);
+        anyDynamic = true;
+      } else if (actions[i].matches(from, to, event)) {
+        candidates.add(actions[i]);
+      }
+    }
+
+    return new Dispatch<>(
+        event != null ? event.getClass() : null,
+        candidates.toArray(emptyActions()),
+        anyDynamic ? Arrays.copyOf(verify, candidates.size()) : null
+    );
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <S, E> TransitionAction<S, E>[] emptyActions() {
+    // toArray only takes the component type from it, so it's never written through
+    return (TransitionAction<S, E>[]) NO_ACTIONS;
+  }
+
+  private static <E> Predicate<E> eventFilter(TransitionAction<?, E> transitionAction) {
+    if (transitionAction instanceof ActionBuilder.PredicatedTransitionAction) {
+      return ((ActionBuilder.PredicatedTransitionAction<?, E>) transitionAction).getVia();
+    } else {
+      return null;
+    }
+  }
+
+  private static class Cell<S, E> {
+
+    final Map<Object, Dispatch<S, E>> byInstance = new ConcurrentHashMap<>();
+    final Map<Class<?>, Dispatch<S, E>> byClass = new ConcurrentHashMap<>();
+
+  }
+
+  private static class Dispatch<S, E> {
+
+    final Class<?> eventType;
+    final TransitionAction<S, E>[] candidates;
+    final boolean[] verify;
+    final List<TransitionAction<S, E>> actions;
+
+    Dispatch(Class<?> eventType, TransitionAction<S, E>[] candidates, boolean[] verify) {
+      this.eventType = eventType;
+      this.candidates = candidates;
+      this.verify = verify;
+      this.actions = Collections.unmodifiableList(Arrays.asList(candidates));
+    }
+
+    List<TransitionAction<S, E>> actions(S from, S to, E event) {
+      if (verify == null) {
+        return actions;
+      }
+
+      var matching = new ArrayList<TransitionAction<S, E>>(candidates.length);
+
+      for (int i = 0; i < candidates.length; i++) {
+        if (!verify[i] || candidates[i].matches(from, to, event)) {
+          matching.add(candidates[i]);
+        }
+      }
+
+      return Collections.unmodifiableList(matching);
+    }
+
+  }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import com.digitalpetri.fsm.FsmContext;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A {@link TransitionResolver} for FSMs whose states and events are both enums, backed by a flat
+ * table of target state ordinals indexed by {@code stateOrdinal * eventCount + eventOrdinal}.
+ *
+ * <p>Cells whose first Transition is guarded are delegated to an
+ * {@link IndexedTransitionResolver} so the guard is evaluated as usual.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+class DenseTransitionResolver<S extends Enum<S>, E> implements TransitionResolver<S, E> {
+
+  private static final int NO_TRANSITION = -1;
+  private static final int GUARDED = -2;
+
+  private final S[] states;
+  private final Class<?> eventType;
+  private final int eventCount;
+  private final int[] table;
+  private final TransitionResolver<S, E> guarded;
+
+  private DenseTransitionResolver(
+      S[] states,
+      Class<?> eventType,
+      int[] table,
+      TransitionResolver<S, E> guarded
+  ) {
+
+    this.states = states;
+    this.eventType = eventType;
+    this.eventCount = eventType.getEnumConstants().length;
+    this.table = table;
+    this.guarded = guarded;
+  }
+
+  @Override
+  public S resolve(FsmContext<S, E> ctx, S state, E event) {
+    if (!eventType.isInstance(event)) {
+      // no Transition can match an event that isn't one of the enum constants.
+      return state;
+    }
+
+    int cell = table[state.ordinal() * eventCount + ((Enum<?>) event).ordinal()];
+
+    if (cell >= 0) {
+      return states[cell];
+    } else if (cell == NO_TRANSITION) {
+      return state;
+    } else {
+      return guarded.resolve(ctx, state, event);
+    }
+  }
+
+  /**
+   * Check whether {@code transitions} can be compiled into a {@link DenseTransitionResolver}.
+   *
+   * @param transitions the {@link Transition}s, in order of definition.
+   * @return {@code true} if {@code transitions} can be compiled.
+   */
+  static boolean isSupported(List<? extends Transition<?, ?>> transitions) {
+    return eventType(transitions) != null;
+  }
+
+  /**
+   * Compile {@code transitions} into a {@link DenseTransitionResolver}.
+   *
+   * @param stateType the state enum class.
+   * @param transitions the {@link Transition}s, in order of definition.
+   * @param <S> state type
+   * @param <E> event type
+   * @return a {@link DenseTransitionResolver} for {@code transitions}.
+   * @throws IllegalArgumentException if {@code transitions} can't be compiled into a
+   *     {@link DenseTransitionResolver}.
+   * @see #isSupported(List)
+   */
+  static <S extends Enum<S>, E> DenseTransitionResolver<S, E> compile(
+      Class<S> stateType,
+      List<Transition<S, E>> transitions
+  ) {
+
+    Class<?> eventType = eventType(transitions);
+
+    if (eventType == null) {
+      throw new IllegalArgumentException(
+          "dense transition table requires enum states and events defined by instance");
+    }
+
+    S[] states = stateType.getEnumConstants();
+    int eventCount = eventType.getEnumConstants().length;
+
+    var table = new int[states.length * eventCount];
+    Arrays.fill(table, NO_TRANSITION);
+
+    boolean anyGuarded = false;
+
+    for (Transition<S, E> transition : transitions) {
+      var t = (PredicatedTransition<S, E>) transition;
+      var from = (Enum<?>) ((Predicates.EqualTo<S>) t.getFrom()).value();
+      var via = (Enum<?>) ((Predicates.EqualTo<E>) t.getVia()).value();
+
+      int index = from.ordinal() * eventCount + via.ordinal();
+
+      // only the first Transition defined for a cell can win; if it's guarded, the guarded path
+      // takes care of evaluating it and any Transitions defined after it.
+      if (table[index] == NO_TRANSITION) {
+        if (t.isGuarded()) {
+          table[index] = GUARDED;
+          anyGuarded = true;
+        } else {
+          table[index] = t.getTarget().ordinal();
+        }
+      }
+    }
+
+    TransitionResolver<S, E> guarded = anyGuarded
+        ? IndexedTransitionResolver.compile(stateType, transitions)
+        : (ctx, state, event) -> state;
+
+    return new DenseTransitionResolver<>(states, eventType, table, guarded);
+  }
+
+  /**
+   * Get the enum class shared by the event of every Transition in {@code transitions}, or
+   * {@code null} if they don't all have one.
+   */
+  private static Class<?> eventType(List<? extends Transition<?, ?>> transitions) {
+    Class<?> eventType = null;
+
+    for (Transition<?, ?> transition : transitions) {
+      if (!(transition instanceof PredicatedTransition)) {
+        return null;
+      }
+
+      var t = (PredicatedTransition<?, ?>) transition;
+      Predicate<?> from = t.getFrom();
+      Predicate<?> via = t.getVia();
+
+      if (!(from instanceof Predicates.EqualTo)
+          || !(((Predicates.EqualTo<?>) from).value() instanceof Enum)) {
+        return null;
+      }
+      if (!(via instanceof Predicates.EqualTo)
+          || !(((Predicates.EqualTo<?>) via).value() instanceof Enum)) {
+        return null;
+      }
+
+      Class<?> type = ((Enum<?>) ((Predicates.EqualTo<?>) via).value()).getDeclaringClass();
+
+      if (eventType == null) {
+        eventType = type;
+      } else if (eventType != type) {
+        return null;
+      }
+    }
+
+    return eventType;
+  }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import com.digitalpetri.fsm.VirtualThreads;
+
+/**
+ * Selects what the {@link com.digitalpetri.fsm.Fsm}s built by {@link FsmBuilder} run on.
+ */
+public enum ExecutionMode {
+
+  /**
+   * Run on the {@link java.util.concurrent.Executor} or
+   * {@link com.digitalpetri.fsm.ShardedScheduler} the {@link FsmBuilder} was created with.
+   */
+  EXECUTOR,
+
+  /**
+   * Run each machine on its own virtual thread while it has events to evaluate, so actions that
+   * block park a virtual thread instead of a platform thread.
+   *
+   * <p>Requires Java 21 or later; see {@link VirtualThreads#isSupported()}.
+   */
+  VIRTUAL_THREAD
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+/**
+ * Tags a {@link TransitionAction} with the kind of work it does, selecting where it executes.
+ */
+public enum ExecutionTag {
+
+  /**
+   * Execute on the machine's own thread, as events are evaluated.
+   */
+  INLINE,
+
+  /**
+   * Execute on the executor configured via {@link FsmBuilder#setBlockingActionExecutor}, so an
+   * action that blocks doesn't hold up other machines sharing the machine's executor. The
+   * machine resumes with the next action once it has finished. Executes inline if no executor is
+   * configured, or if it rejects the action.
+   */
+  BLOCKING
+
+}
@@ -10,41 +10,96 @@
 
 package com.digitalpetri.fsm.dsl;
 
+import com.digitalpetri.fsm.EventBatching;
+import com.digitalpetri.fsm.EventQueueCapacity;
 import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.FsmContext;
+import com.digitalpetri.fsm.FsmDefinition;
+import com.digitalpetri.fsm.OverflowPolicy;
+import com.digitalpetri.fsm.ShardedScheduler;
+import com.digitalpetri.fsm.StateTimeout;
 import com.digitalpetri.fsm.StrictMachine;
+import com.digitalpetri.fsm.VirtualThreads;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 public class FsmBuilder<S extends Enum<S>, E> {
 
   private static final AtomicLong INSTANCE_ID = new AtomicLong(0);
 
-  private static final ExecutorService EXECUTOR_SERVICE = Executors.newSingleThreadExecutor();
+  /**
+   * The {@link FsmDefinition} constructor, which isn't public so the compiled resolvers it takes
+   * stay out of the API.
+   */
+  private static final MethodHandle NEW_DEFINITION = findDefinitionConstructor();
 
   private final List<Transition<S, E>> transitions = new ArrayList<>();
 
   private final LinkedList<TransitionAction<S, E>> transitionActions = new LinkedList<>();
 
+  private final List<StateTimeout<S, E>> stateTimeouts = new ArrayList<>();
+
   private ActionProxy<S, E> actionProxy = null;
 
+  private TransitionEngine transitionEngine = TransitionEngine.AUTO;
+
+  private EventBatching eventBatching = EventBatching.none();
+  private EventQueueCapacity eventQueueCapacity = EventQueueCapacity.unbounded();
+  private Function<? super E, ?> coalescingKey = null;
+  private int priorityLanes = 1;
+  private ToIntFunction<? super E> laneClassifier = null;
+  private Executor actionExecutor = null;
+  private Executor blockingActionExecutor = null;
+
+  private ExecutionMode executionMode = ExecutionMode.EXECUTOR;
+
+  private final Set<FsmContext.Key<?>> contextKeys = new LinkedHashSet<>();
+  private final Set<FsmContext.LongKey> longContextKeys = new LinkedHashSet<>();
+  private final Set<FsmContext.IntKey> intContextKeys = new LinkedHashSet<>();
+
+  private List<TransitionAction<S, E>> compiledTransitionActions = null;
+  private TransitionActionResolver<S, E> transitionActionResolver = null;
+
+  /**
+   * The definition last built, reused until the builder changes: setters, and the DSL builders
+   * via {@link #onChange}, reset it.
+   */
+  private FsmDefinition<S, E> definition = null;
+  private Class<S> definitionStateType = null;
+
+  private final Runnable onChange = () -> definition = null;
+
   private final String loggerName;
   private final Map<String, String> mdc;
   private final Executor executor;
+  private final ShardedScheduler scheduler;
   private final Object userContext;
 
+  /**
+   * Create an FsmBuilder whose {@link Fsm}s run on the {@link ShardedScheduler#shared()}
+   * scheduler.
+   */
   public FsmBuilder() {
     this(
         StrictMachine.class.getName(),
         Map.of(),
-        EXECUTOR_SERVICE,
+        ShardedScheduler.shared(),
         null
     );
   }
@@ -56,9 +111,39 @@ public class FsmBuilder<S extends Enum<S>, E> {
       Object userContext
   ) {
 
+    this(loggerName, mdc, executor, null, userContext);
+  }
+
+  /**
+   * Create an FsmBuilder whose {@link Fsm}s are each pinned to one shard of {@code scheduler}.
+   *
+   * @param loggerName the name of the logger used by {@link Fsm}s built.
+   * @param mdc MDC values set while logging.
+   * @param scheduler the {@link ShardedScheduler} to pin {@link Fsm}s built to.
+   * @param userContext the user context available to {@link Fsm}s built.
+   */
+  public FsmBuilder(
+      String loggerName,
+      Map<String, String> mdc,
+      ShardedScheduler scheduler,
+      Object userContext
+  ) {
+
+    this(loggerName, mdc, null, scheduler, userContext);
+  }
+
+  private FsmBuilder(
+      String loggerName,
+      Map<String, String> mdc,
+      Executor executor,
+      ShardedScheduler scheduler,
+      Object userContext
+  ) {
+
     this.loggerName = loggerName;
     this.mdc = mdc;
     this.executor = executor;
+    this.scheduler = scheduler;
     this.userContext = userContext;
   }
 
@@ -70,7 +155,7 @@ public class FsmBuilder<S extends Enum<S>, E> {
    * @return a {@link TransitionBuilder}.
    */
   public TransitionBuilder<S, E> when(S state) {
-    return new TransitionBuilder<>(state, transitions, transitionActions);
+    return new TransitionBuilder<>(state, transitions, transitionActions, stateTimeouts, onChange);
   }
 
   /**
@@ -109,7 +194,7 @@ public class FsmBuilder<S extends Enum<S>, E> {
    * @return an {@link ActionToBuilder}.
    */
   public ActionToBuilder<S, E> onTransitionTo(Predicate<S> filter) {
-    return new ActionToBuilder<>(filter, transitionActions);
+    return new ActionToBuilder<>(filter, transitionActions, onChange);
   }
 
   /**
@@ -130,7 +215,7 @@ public class FsmBuilder<S extends Enum<S>, E> {
    * @return an {@link ActionFromBuilder}.
    */
   public ActionFromBuilder<S, E> onTransitionFrom(Predicate<S> filter) {
-    return new ActionFromBuilder<>(filter, transitionActions);
+    return new ActionFromBuilder<>(filter, transitionActions, onChange);
   }
 
   /**
@@ -140,6 +225,8 @@ public class FsmBuilder<S extends Enum<S>, E> {
    */
   public void addTransition(Transition<S, E> transition) {
     transitions.add(transition);
+
+    definition = null;
   }
 
   /**
@@ -149,6 +236,8 @@ public class FsmBuilder<S extends Enum<S>, E> {
    */
   public void addTransitionAction(TransitionAction<S, E> transitionAction) {
     transitionActions.add(transitionAction);
+
+    definition = null;
   }
 
   /**
@@ -158,19 +247,379 @@ public class FsmBuilder<S extends Enum<S>, E> {
    */
   public void setActionProxy(ActionProxy<S, E> actionProxy) {
     this.actionProxy = actionProxy;
+
+    definition = null;
+  }
+
+  /**
+   * Configure the {@link TransitionEngine} used to evaluate the {@link Transition}s of the
+   * {@link Fsm} instance being built.
+   *
+   * <p>Defaults to {@link TransitionEngine#AUTO}.
+   *
+   * @param transitionEngine the {@link TransitionEngine} to use.
+   */
+  public void setTransitionEngine(TransitionEngine transitionEngine) {
+    this.transitionEngine = transitionEngine;
+
+    definition = null;
+  }
+
+  /**
+   * Configure how many queued events the {@link Fsm} instance being built evaluates per task
+   * submitted to its executor.
+   *
+   * <p>Defaults to {@link EventBatching#none()}, one event per task. Batching doesn't change when
+   * callbacks are notified: each event's callback is notified, without holding the lock, before
+   * the next event is evaluated.
+   *
+   * @param eventBatching the {@link EventBatching} limits to use.
+   */
+  public void setEventBatching(EventBatching eventBatching) {
+    this.eventBatching = eventBatching;
+
+    definition = null;
+  }
+
+  /**
+   * Configure the capacity of the event queue of the {@link Fsm} instance being built, and what
+   * happens to events fired while it's full.
+   *
+   * <p>Defaults to {@link EventQueueCapacity#unbounded()}.
+   *
+   * @param eventQueueCapacity the {@link EventQueueCapacity} to use.
+   */
+  public void setEventQueueCapacity(EventQueueCapacity eventQueueCapacity) {
+    this.eventQueueCapacity = eventQueueCapacity;
+
+    definition = null;
+  }
+
+  /**
+   * Coalesce fired events matching {@code coalescible} with an equal event that is still queued.
+   *
+   * <p>Instead of being queued, such an event replaces the queued one, taking over its place in
+   * the queue, and is evaluated once. The callbacks and completions of both are notified of the
+   * resulting state. Events fired as a batch via {@link Fsm#fireEvents(List)} are never
+   * coalesced.
+   *
+   * @param coalescible the {@link Predicate} selecting the events to coalesce.
+   * @see #setEventCoalescingKey(Function)
+   */
+  public void setEventCoalescing(Predicate<? super E> coalescible) {
+    this.coalescingKey = event -> coalescible.test(event) ? event : null;
+
+    definition = null;
+  }
+
+  /**
+   * Coalesce fired events with a queued event that has an equal key, as derived by
+   * {@code coalescingKey}; events for which it returns {@code null} aren't coalesced.
+   *
+   * @param coalescingKey the {@link Function} deriving the key events are coalesced by.
+   * @see #setEventCoalescing(Predicate)
+   */
+  public void setEventCoalescingKey(Function<? super E, ?> coalescingKey) {
+    this.coalescingKey = coalescingKey;
+
+    definition = null;
+  }
+
+  /**
+   * Queue events in {@code priorityLanes} lanes, as assigned to each fired event by
+   * {@code laneClassifier}.
+   *
+   * <p>Lane 0 has the highest priority. The next event evaluated is always taken from the highest
+   * priority lane that has one, and events in the same lane are evaluated in the order they were
+   * fired. Shelved events are re-injected ahead of the events queued in their own lane. A batch
+   * fired via {@link Fsm#fireEvents(List)} is queued in the lane of its first event.
+   *
+   * <p>With a bounded {@link EventQueueCapacity} the lanes share its capacity rather than each
+   * getting their own, and {@link OverflowPolicy#DROP_OLDEST} drops from the lowest priority lane
+   * first.
+   *
+   * <p>Defaults to a single lane.
+   *
+   * @param priorityLanes the number of priority lanes.
+   * @param laneClassifier the {@link ToIntFunction} assigning each event a lane, from 0 to
+   *     {@code priorityLanes - 1}.
+   */
+  public void setPriorityLanes(int priorityLanes, ToIntFunction<? super E> laneClassifier) {
+    if (priorityLanes < 1) {
+      throw new IllegalArgumentException("priorityLanes must be >= 1: " + priorityLanes);
+    }
+
+    this.priorityLanes = priorityLanes;
+    this.laneClassifier = priorityLanes > 1 ? Objects.requireNonNull(laneClassifier) : null;
+
+    definition = null;
+  }
+
+  /**
+   * Evaluate events and execute their actions in two pipelined stages.
+   *
+   * <p>The first stage, on the machine's executor, resolves the transition and updates the state,
+   * then notifies the event's callback or completion. The second stage executes the matching
+   * {@link TransitionAction}s, one at a time and in order, on {@code actionExecutor}. The first
+   * stage goes on to evaluate the next event while the second is executing only if every
+   * matching action is a {@link PipelinedTransitionAction}, defined via
+   * {@link ActionBuilder#executePipelined(Action)}; otherwise it waits for the actions to
+   * finish. Either way, events fired by the actions are queued even if a bounded queue with
+   * {@link OverflowPolicy#BLOCK} is full, rather than wait for room.
+   *
+   * <p>Defaults to {@code null}: events are evaluated and their actions executed in one stage.
+   *
+   * @param actionExecutor the {@link Executor} actions are executed on, or {@code null} to
+   *     disable pipelining.
+   */
+  public void setActionPipelining(Executor actionExecutor) {
+    this.actionExecutor = actionExecutor;
+
+    definition = null;
+  }
+
+  /**
+   * Configure the {@link Executor} that actions tagged {@link ExecutionTag#BLOCKING} are handed
+   * to, typically a bounded pool dedicated to blocking work.
+   *
+   * <p>The machine releases its thread while such an action executes and resumes with the next
+   * action once it has finished. An action rejected by {@code blockingActionExecutor} executes
+   * inline.
+   *
+   * <p>Defaults to {@code null}: tagged actions execute inline like any other.
+   *
+   * @param blockingActionExecutor the {@link Executor} for blocking actions, or {@code null}.
+   * @see ActionBuilder#execute(Action, ExecutionTag)
+   */
+  public void setBlockingActionExecutor(Executor blockingActionExecutor) {
+    this.blockingActionExecutor = blockingActionExecutor;
+
+    definition = null;
+  }
+
+  /**
+   * Register {@link FsmContext.Key}s whose values are stored in a fixed slot of each
+   * {@link Fsm} instance being built rather than in a map.
+   *
+   * <p>Keys that aren't registered can still be used; their values are kept in a map.
+   *
+   * @param keys the keys to register.
+   */
+  public void registerContextKeys(FsmContext.Key<?>... keys) {
+    contextKeys.addAll(Arrays.asList(keys));
+
+    definition = null;
+  }
+
+  /**
+   * Register {@link FsmContext.LongKey}s whose values are stored in a fixed slot of each
+   * {@link Fsm} instance being built rather than in a map.
+   *
+   * @param keys the keys to register.
+   */
+  public void registerContextKeys(FsmContext.LongKey... keys) {
+    longContextKeys.addAll(Arrays.asList(keys));
+
+    definition = null;
   }
 
+  /**
+   * Register {@link FsmContext.IntKey}s whose values are stored in a fixed slot of each
+   * {@link Fsm} instance being built rather than in a map.
+   *
+   * @param keys the keys to register.
+   */
+  public void registerContextKeys(FsmContext.IntKey... keys) {
+    intContextKeys.addAll(Arrays.asList(keys));
+
+    definition = null;
+  }
+
+  /**
+   * Configure the {@link ExecutionMode} of the {@link Fsm} instance being built.
+   *
+   * <p>Defaults to {@link ExecutionMode#EXECUTOR}.
+   *
+   * @param executionMode the {@link ExecutionMode} to use.
+   */
+  public void setExecutionMode(ExecutionMode executionMode) {
+    this.executionMode = executionMode;
+
+    definition = null;
+  }
+
+  /**
+   * Build a new {@link Fsm} instance starting in {@code initialState}.
+   *
+   * <p>The definition is compiled by the first call and shared by the instances built by later
+   * calls, until this builder is changed; see {@link #buildDefinition(Class)}.
+   *
+   * @param initialState the initial state.
+   * @return a new {@link Fsm} instance.
+   * @throws UnsupportedOperationException if {@link ExecutionMode#VIRTUAL_THREAD} is configured
+   *     but virtual threads are not supported on the current runtime.
+   */
   public Fsm<S, E> build(S initialState) {
-    return new StrictMachine<>(
-        loggerName,
-        mdc,
-        executor,
-        userContext,
-        actionProxy,
-        initialState,
-        new ArrayList<>(transitions),
-        new ArrayList<>(transitionActions)
+    return buildDefinition(initialState.getDeclaringClass()).newInstance(initialState);
+  }
+
+  /**
+   * Compile the Transitions, TransitionActions, and configuration defined so far into an
+   * immutable {@link FsmDefinition}.
+   *
+   * <p>Changes made to this builder afterward, including a guard given to a Transition that was
+   * already defined, do not affect the definition. Calls that follow such a change compile a new
+   * definition; calls without one in between return the same definition.
+   *
+   * @param stateType the state enum class.
+   * @return a new {@link FsmDefinition}.
+   * @throws UnsupportedOperationException if {@link ExecutionMode#VIRTUAL_THREAD} is configured
+   *     but virtual threads are not supported on the current runtime.
+   */
+  public FsmDefinition<S, E> buildDefinition(Class<S> stateType) {
+    FsmDefinition<S, E> d = definition;
+
+    if (d == null || definitionStateType != stateType) {
+      d = definition = compileDefinition(stateType);
+      definitionStateType = stateType;
+    }
+
+    return d;
+  }
+
+  @SuppressWarnings("unchecked")
+  private FsmDefinition<S, E> compileDefinition(Class<S> stateType) {
+    Supplier<Executor> executorSupplier;
+    if (executionMode == ExecutionMode.VIRTUAL_THREAD) {
+      Executor virtualThreadExecutor = VirtualThreads.executor();
+      executorSupplier = () -> virtualThreadExecutor;
+    } else if (scheduler != null) {
+      ShardedScheduler shardedScheduler = scheduler;
+      executorSupplier = () -> shardedScheduler.executor(INSTANCE_ID.getAndIncrement());
+    } else {
+      Executor sharedExecutor = executor;
+      executorSupplier = () -> sharedExecutor;
+    }
+
+    try {
+      return (FsmDefinition<S, E>) NEW_DEFINITION.invoke(
+          loggerName,
+          mdc,
+          executorSupplier,
+          eventBatching,
+          eventQueueCapacity,
+          coalescingKey,
+          priorityLanes,
+          laneClassifier,
+          List.copyOf(stateTimeouts),
+          actionExecutor,
+          blockingActionExecutor,
+          contextKeys,
+          longContextKeys,
+          intContextKeys,
+          userContext,
+          actionProxy,
+          compileTransitions(stateType),
+          compileTransitionActions(stateType)
+      );
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  private static MethodHandle findDefinitionConstructor() {
+    MethodType type = MethodType.methodType(
+        void.class,
+        String.class,
+        Map.class,
+        Supplier.class,
+        EventBatching.class,
+        EventQueueCapacity.class,
+        Function.class,
+        int.class,
+        ToIntFunction.class,
+        List.class,
+        Executor.class,
+        Executor.class,
+        Collection.class,
+        Collection.class,
+        Collection.class,
+        Object.class,
+        ActionProxy.class,
+        TransitionResolver.class,
+        TransitionActionResolver.class
     );
+
+    try {
+      return MethodHandles.privateLookupIn(FsmDefinition.class, MethodHandles.lookup())
+          .findConstructor(FsmDefinition.class, type);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  TransitionResolver<S, E> compileTransitions(Class<S> stateType) {
+    List<Transition<S, E>> transitions = frozenTransitions();
+
+    switch (transitionEngine) {
+      case DENSE:
+        if (!DenseTransitionResolver.isSupported(transitions)) {
+          throw new IllegalStateException(
+              "TransitionEngine.DENSE requires Transitions defined via enum event instances");
+        }
+        return DenseTransitionResolver.compile(stateType, transitions);
+
+      case INDEXED:
+        return IndexedTransitionResolver.compile(stateType, transitions);
+
+      case AUTO:
+      default:
+        if (DenseTransitionResolver.isSupported(transitions)) {
+          return DenseTransitionResolver.compile(stateType, transitions);
+        } else {
+          return IndexedTransitionResolver.compile(stateType, transitions);
+        }
+    }
+  }
+
+  /**
+   * Copy the Transitions defined so far, freezing the guards of those defined via the DSL so
+   * compiled Transitions neither see later changes nor pay for a volatile read.
+   */
+  private List<Transition<S, E>> frozenTransitions() {
+    var frozen = new ArrayList<Transition<S, E>>(transitions.size());
+
+    for (Transition<S, E> transition : transitions) {
+      if (transition instanceof PredicatedTransition) {
+        frozen.add(((PredicatedTransition<S, E>) transition).freeze());
+      } else {
+        frozen.add(transition);
+      }
+    }
+
+    return frozen;
+  }
+
+  /**
+   * Compile the {@link TransitionAction}s defined so far.
+   *
+   * <p>The compiled {@link TransitionActionResolver}, and the dispatch cache it holds, is shared by
+   * every {@link Fsm} built from this builder until another TransitionAction is defined.
+   */
+  TransitionActionResolver<S, E> compileTransitionActions(Class<S> stateType) {
+    if (transitionActionResolver == null || !compiledTransitionActions.equals(transitionActions)) {
+      compiledTransitionActions = new ArrayList<>(transitionActions);
+
+      transitionActionResolver = new CachedTransitionActionResolver<>(
+          stateType,
+          compiledTransitionActions,
+          CachedTransitionActionResolver.DEFAULT_MAX_ENTRIES
+      );
+    }
+
+    return transitionActionResolver;
   }
 
 }
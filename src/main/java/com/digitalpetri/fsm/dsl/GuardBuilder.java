@@ -19,23 +19,29 @@ public class GuardBuilder<S, E> extends ActionBuilder<S, E> {
 
   private final PredicatedTransition<S, E> transition;
 
+  private final Runnable onChange;
+
   GuardBuilder(
       PredicatedTransition<S, E> transition,
-      LinkedList<TransitionAction<S, E>> transitionActions
+      LinkedList<TransitionAction<S, E>> transitionActions,
+      Runnable onChange
   ) {
 
     super(
         transition.getFrom(),
         s -> Objects.equals(s, transition.getTarget()),
         transition.getVia(),
-        transitionActions
+        transitionActions,
+        onChange
     );
 
     this.transition = transition;
+    this.onChange = onChange;
   }
 
   public ActionBuilder<S, E> guardedBy(Predicate<FsmContext<S, E>> guard) {
     transition.setGuard(guard);
+    onChange.run();
 
     return this;
   }
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import com.digitalpetri.fsm.FsmContext;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A {@link TransitionResolver} that indexes {@link Transition}s by the state they leave from and,
+ * within each state, by the event instance or event class they are triggered by.
+ *
+ * <p>Transitions that can't be indexed, e.g. those defined with an event {@link Predicate} or
+ * added manually via {@link FsmBuilder#addTransition(Transition)}, are kept in every candidate
+ * list at their original position, so the first matching Transition still wins.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+class IndexedTransitionResolver<S extends Enum<S>, E> implements TransitionResolver<S, E> {
+
+  private final Map<S, StateTransitions<S, E>> byState;
+  private final StateTransitions<S, E> unindexed;
+
+  private IndexedTransitionResolver(
+      Map<S, StateTransitions<S, E>> byState,
+      StateTransitions<S, E> unindexed
+  ) {
+
+    this.byState = byState;
+    this.unindexed = unindexed;
+  }
+
+  @Override
+  public S resolve(FsmContext<S, E> ctx, S state, E event) {
+    StateTransitions<S, E> stateTransitions = byState.get(state);
+
+    if (stateTransitions == null) {
+      stateTransitions = unindexed;
+    }
+
+    for (Transition<S, E> transition : stateTransitions.candidates(event)) {
+      if (transition.matches(ctx, state, event)) {
+        return transition.target();
+      }
+    }
+
+    return state;
+  }
+
+  /**
+   * Compile {@code transitions} into an {@link IndexedTransitionResolver}.
+   *
+   * @param stateType the state enum class.
+   * @param transitions the {@link Transition}s, in order of definition.
+   * @param <S> state type
+   * @param <E> event type
+   * @return an {@link IndexedTransitionResolver} for {@code transitions}.
+   */
+  static <S extends Enum<S>, E> IndexedTransitionResolver<S, E> compile(
+      Class<S> stateType,
+      List<Transition<S, E>> transitions
+  ) {
+
+    var byState = new EnumMap<S, List<Transition<S, E>>>(stateType);
+    var unindexed = new ArrayList<Transition<S, E>>();
+
+    for (Transition<S, E> transition : transitions) {
+      S from = sourceState(stateType, transition);
+
+      if (from != null) {
+        byState.computeIfAbsent(from, s -> new ArrayList<>(unindexed)).add(transition);
+      } else {
+        unindexed.add(transition);
+        byState.values().forEach(l -> l.add(transition));
+      }
+    }
+
+    var compiled = new EnumMap<S, StateTransitions<S, E>>(stateType);
+    byState.forEach((state, l) -> compiled.put(state, StateTransitions.compile(l)));
+
+    return new IndexedTransitionResolver<>(compiled, StateTransitions.compile(unindexed));
+  }
+
+  private static <S extends Enum<S>> S sourceState(Class<S> stateType, Transition<S, ?> t) {
+    if (t instanceof PredicatedTransition) {
+      Predicate<S> from = ((PredicatedTransition<S, ?>) t).getFrom();
+
+      if (from instanceof Predicates.EqualTo) {
+        Object value = ((Predicates.EqualTo<S>) from).value();
+
+        if (stateType.isInstance(value)) {
+          return stateType.cast(value);
+        }
+      }
+    }
+
+    return null;
+  }
+
+  private static <E> Predicate<E> eventFilter(Transition<?, E> t) {
+    if (t instanceof PredicatedTransition) {
+      return ((PredicatedTransition<?, E>) t).getVia();
+    } else {
+      return null;
+    }
+  }
+
+  private static class StateTransitions<S, E> {
+
+    private final Map<Object, Candidates<S, E>> byInstance;
+    private final Map<Class<?>, Transition<S, E>[]> byClass;
+    private final Transition<S, E>[] fallback;
+    private final Transition<S, E>[] all;
+
+    private StateTransitions(
+        Map<Object, Candidates<S, E>> byInstance,
+        Map<Class<?>, Transition<S, E>[]> byClass,
+        Transition<S, E>[] fallback,
+        Transition<S, E>[] all
+    ) {
+
+      this.byInstance = byInstance;
+      this.byClass = byClass;
+      this.fallback = fallback;
+      this.all = all;
+    }
+
+    /**
+     * Get the ordered Transitions that could match {@code event}.
+     *
+     * @param event the event being evaluated.
+     * @return the ordered Transitions that could match {@code event}.
+     */
+    Transition<S, E>[] candidates(E event) {
+      Candidates<S, E> candidates = byInstance.get(event);
+
+      if (candidates != null) {
+        // an event equal to, but not of the same class as, an instance key could still match a
+        // class-based Transition that wasn't considered for this key.
+        return candidates.type == typeOf(event) ? candidates.transitions : all;
+      }
+
+      if (event != null) {
+        Transition<S, E>[] transitions = byClass.get(event.getClass());
+
+        if (transitions != null) {
+          return transitions;
+        }
+      }
+
+      return fallback;
+    }
+
+    static <S, E> StateTransitions<S, E> compile(List<Transition<S, E>> transitions) {
+      Set<Object> instanceKeys = new LinkedHashSet<>();
+      Set<Class<?>> classKeys = new LinkedHashSet<>();
+
+      for (Transition<S, E> transition : transitions) {
+        Predicate<E> via = eventFilter(transition);
+
+        if (via instanceof Predicates.EqualTo) {
+          instanceKeys.add(((Predicates.EqualTo<E>) via).value());
+        } else if (via instanceof Predicates.ClassOf) {
+          classKeys.add(((Predicates.ClassOf<E>) via).type());
+        }
+      }
+
+      var byInstance = new HashMap<Object, Candidates<S, E>>();
+
+      for (Object key : instanceKeys) {
+        Class<?> keyType = typeOf(key);
+
+        Transition<S, E>[] candidates = filter(transitions, via -> {
+          if (via instanceof Predicates.EqualTo) {
+            return Objects.equals(((Predicates.EqualTo<E>) via).value(), key);
+          } else if (via instanceof Predicates.ClassOf) {
+            return ((Predicates.ClassOf<E>) via).type() == keyType;
+          } else {
+            return true;
+          }
+        });
+
+        byInstance.put(key, new Candidates<>(keyType, candidates));
+      }
+
+      var byClass = new HashMap<Class<?>, Transition<S, E>[]>();
+
+      for (Class<?> key : classKeys) {
+        Transition<S, E>[] candidates = filter(transitions, via -> {
+          if (via instanceof Predicates.EqualTo) {
+            return false;
+          } else if (via instanceof Predicates.ClassOf) {
+            return ((Predicates.ClassOf<E>) via).type() == key;
+          } else {
+            return true;
+          }
+        });
+
+        byClass.put(key, candidates);
+      }
+
+      Transition<S, E>[] fallback = filter(
+          transitions,
+          via -> !(via instanceof Predicates.EqualTo) && !(via instanceof Predicates.ClassOf)
+      );
+
+      Transition<S, E>[] all = filter(transitions, via -> true);
+
+      return new StateTransitions<>(byInstance, byClass, fallback, all);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S, E> Transition<S, E>[] filter(
+        List<Transition<S, E>> transitions,
+        Predicate<Predicate<E>> include
+    ) {
+
+      return transitions.stream()
+          .filter(t -> include.test(eventFilter(t)))
+          .toArray(Transition[]::new);
+    }
+
+    private static Class<?> typeOf(Object o) {
+      return o != null ? o.getClass() : null;
+    }
+
+  }
+
+  private static class Candidates<S, E> {
+
+    final Class<?> type;
+    final Transition<S, E>[] transitions;
+
+    Candidates(Class<?> type, Transition<S, E>[] transitions) {
+      this.type = type;
+      this.transitions = transitions;
+    }
+
+  }
+
+}
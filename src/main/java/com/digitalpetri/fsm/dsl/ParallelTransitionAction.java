@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link TransitionAction} that is independent of the actions next to it.
+ *
+ * <p>Consecutive ParallelTransitionActions matched by a transition execute concurrently, each on
+ * its {@link #executor()}, and the transition completes once all of them have finished. The
+ * actions before and after such a run still execute in order around it.
+ *
+ * <p>Since the machine waits for them, events they fire are queued even if a bounded queue with
+ * {@link com.digitalpetri.fsm.OverflowPolicy#BLOCK} is full, rather than wait for room.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+public interface ParallelTransitionAction<S, E> extends TransitionAction<S, E> {
+
+  /**
+   * Get the {@link Executor} this action executes on when it runs concurrently with others.
+   *
+   * @return the {@link Executor} this action executes on.
+   */
+  Executor executor();
+
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+/**
+ * A {@link TransitionAction} that doesn't depend on the machine staying in the state it
+ * transitioned to while it executes.
+ *
+ * <p>When actions are pipelined (see {@link FsmBuilder#setActionPipelining}), the machine goes
+ * on evaluating later events while a transition's actions execute, provided every one of them is
+ * a PipelinedTransitionAction. Actions still execute one at a time, in order.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+public interface PipelinedTransitionAction<S, E> extends TransitionAction<S, E> {}
@@ -15,16 +15,34 @@ import java.util.function.Predicate;
 
 class PredicatedTransition<S, E> implements Transition<S, E> {
 
-  private volatile Predicate<FsmContext<S, E>> guard = ctx -> true;
+  private static final Predicate<?> NO_GUARD = ctx -> true;
 
   private final Predicate<S> from;
   private final Predicate<E> via;
   private final S target;
 
+  /**
+   * Set by {@link GuardBuilder} while the transition is being defined; Fsms only see a copy made
+   * by {@link #freeze()}, safely published along with the compiled definition.
+   */
+  private Predicate<FsmContext<S, E>> guard;
+
+  @SuppressWarnings("unchecked")
   PredicatedTransition(Predicate<S> from, Predicate<E> via, S target) {
+    this(from, via, target, (Predicate<FsmContext<S, E>>) NO_GUARD);
+  }
+
+  private PredicatedTransition(
+      Predicate<S> from,
+      Predicate<E> via,
+      S target,
+      Predicate<FsmContext<S, E>> guard
+  ) {
+
     this.from = from;
     this.via = via;
     this.target = target;
+    this.guard = guard;
   }
 
   @Override
@@ -41,6 +59,10 @@ class PredicatedTransition<S, E> implements Transition<S, E> {
     return guard;
   }
 
+  boolean isGuarded() {
+    return guard != NO_GUARD;
+  }
+
   Predicate<S> getFrom() {
     return from;
   }
@@ -57,4 +79,13 @@ class PredicatedTransition<S, E> implements Transition<S, E> {
     this.guard = guard;
   }
 
+  /**
+   * Get a copy of this transition with its current guard.
+   *
+   * @return a copy of this transition with its current guard.
+   */
+  PredicatedTransition<S, E> freeze() {
+    return new PredicatedTransition<>(from, via, target, guard);
+  }
+
 }
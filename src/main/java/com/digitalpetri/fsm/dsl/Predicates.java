@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Predicates created by the DSL that remember what they test for, so transitions and actions can
+ * be indexed when an {@link com.digitalpetri.fsm.Fsm} is built.
+ */
+class Predicates {
+
+  private Predicates() {}
+
+  static <T> Predicate<T> isEqual(T value) {
+    return new EqualTo<>(value);
+  }
+
+  static <T> Predicate<T> isClass(Class<? extends T> type) {
+    return new ClassOf<>(type);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> Predicate<T> any() {
+    return (Predicate<T>) Any.INSTANCE;
+  }
+
+  static final class EqualTo<T> implements Predicate<T> {
+
+    private final T value;
+
+    EqualTo(T value) {
+      this.value = value;
+    }
+
+    T value() {
+      return value;
+    }
+
+    @Override
+    public boolean test(T t) {
+      return Objects.equals(t, value);
+    }
+
+  }
+
+  static final class ClassOf<T> implements Predicate<T> {
+
+    private final Class<? extends T> type;
+
+    ClassOf(Class<? extends T> type) {
+      this.type = type;
+    }
+
+    Class<? extends T> type() {
+      return type;
+    }
+
+    @Override
+    public boolean test(T t) {
+      return Objects.equals(t.getClass(), type);
+    }
+
+  }
+
+  static final class Any<T> implements Predicate<T> {
+
+    static final Any<?> INSTANCE = new Any<>();
+
+    @Override
+    public boolean test(T t) {
+      return true;
+    }
+
+  }
+
+}
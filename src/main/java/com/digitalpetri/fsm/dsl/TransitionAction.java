@@ -29,4 +29,13 @@ public interface TransitionAction<S, E> {
    */
   boolean matches(S from, S to, E event);
 
+  /**
+   * Get the {@link ExecutionTag} selecting where this TransitionAction executes.
+   *
+   * @return the {@link ExecutionTag} of this TransitionAction.
+   */
+  default ExecutionTag executionTag() {
+    return ExecutionTag.INLINE;
+  }
+
 }
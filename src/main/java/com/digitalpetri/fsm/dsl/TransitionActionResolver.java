@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import java.util.List;
+
+/**
+ * Resolves the {@link TransitionAction}s to execute after a transition.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+@FunctionalInterface
+public interface TransitionActionResolver<S, E> {
+
+  /**
+   * Resolve the {@link TransitionAction}s that match the transition criteria, in the order they
+   * should be executed.
+   *
+   * @param from the state transitioned from.
+   * @param to the state transitioned to.
+   * @param event the event that caused the transition.
+   * @return an unmodifiable List of the matching {@link TransitionAction}s.
+   */
+  List<TransitionAction<S, E>> resolve(S from, S to, E event);
+
+}
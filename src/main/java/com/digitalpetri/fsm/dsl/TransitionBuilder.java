@@ -10,6 +10,8 @@
 
 package com.digitalpetri.fsm.dsl;
 
+import com.digitalpetri.fsm.StateTimeout;
+import java.time.Duration;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.function.Predicate;
@@ -19,16 +21,26 @@ public class TransitionBuilder<S extends Enum<S>, E> {
   private final S from;
   private final List<Transition<S, E>> transitions;
   private final LinkedList<TransitionAction<S, E>> transitionActions;
+  private final List<StateTimeout<S, E>> stateTimeouts;
+
+  /**
+   * Called after each change to the definition being built.
+   */
+  private final Runnable onChange;
 
   TransitionBuilder(
       S from,
       List<Transition<S, E>> transitions,
-      LinkedList<TransitionAction<S, E>> transitionActions
+      LinkedList<TransitionAction<S, E>> transitionActions,
+      List<StateTimeout<S, E>> stateTimeouts,
+      Runnable onChange
   ) {
 
     this.from = from;
     this.transitions = transitions;
     this.transitionActions = transitionActions;
+    this.stateTimeouts = stateTimeouts;
+    this.onChange = onChange;
   }
 
   /**
@@ -43,8 +55,9 @@ public class TransitionBuilder<S extends Enum<S>, E> {
           Transitions.fromInstanceViaInstance(from, event, to);
 
       transitions.add(transition);
+      onChange.run();
 
-      return new GuardBuilder<>(transition, transitionActions);
+      return new GuardBuilder<>(transition, transitionActions, onChange);
     };
   }
 
@@ -61,8 +74,9 @@ public class TransitionBuilder<S extends Enum<S>, E> {
           Transitions.fromInstanceViaClass(from, eventClass, to);
 
       transitions.add(transition);
+      onChange.run();
 
-      return new GuardBuilder<>(transition, transitionActions);
+      return new GuardBuilder<>(transition, transitionActions, onChange);
     };
   }
 
@@ -79,8 +93,9 @@ public class TransitionBuilder<S extends Enum<S>, E> {
           Transitions.fromInstanceViaDynamic(from, eventFilter, to);
 
       transitions.add(transition);
+      onChange.run();
 
-      return new GuardBuilder<>(transition, transitionActions);
+      return new GuardBuilder<>(transition, transitionActions, onChange);
     };
   }
 
@@ -90,7 +105,32 @@ public class TransitionBuilder<S extends Enum<S>, E> {
    * @return a {@link TransitionTo}.
    */
   public TransitionTo<S, E> onAny() {
-    return on(e -> true);
+    return on(Predicates.any());
+  }
+
+  /**
+   * Continue defining a {@link Transition} that is triggered by {@code timeoutEvent}, which is
+   * fired once the machine has been in this state for {@code delay}.
+   *
+   * <p>The timeout is scheduled each time the machine enters the state and cancelled if it leaves
+   * the state before {@code delay} elapses; an internal transition doesn't restart it.
+   * {@code timeoutEvent} can also be fired like any other event.
+   *
+   * <p>A timeout's event is never lost to a full bounded event queue: it's queued past the
+   * capacity, whatever the {@link com.digitalpetri.fsm.OverflowPolicy}, and is never the event
+   * dropped to make room.
+   *
+   * @param delay the time the machine must remain in this state.
+   * @param timeoutEvent the event fired when {@code delay} elapses.
+   * @return a {@link TransitionTo}.
+   */
+  public TransitionTo<S, E> timeout(Duration delay, E timeoutEvent) {
+    return to -> {
+      stateTimeouts.add(StateTimeout.of(from, delay, timeoutEvent));
+      onChange.run();
+
+      return on(timeoutEvent).transitionTo(to);
+    };
   }
 
   public interface TransitionTo<S, E> {
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+/**
+ * Selects how {@link FsmBuilder#build(Enum)} compiles {@link Transition}s for evaluation.
+ */
+public enum TransitionEngine {
+
+  /**
+   * Use {@link #DENSE} if the Transitions allow it, otherwise {@link #INDEXED}.
+   */
+  AUTO,
+
+  /**
+   * Index Transitions by the state they leave from and the event instance or event class that
+   * triggers them.
+   */
+  INDEXED,
+
+  /**
+   * Compile Transitions into a flat table indexed by state and event ordinal.
+   *
+   * <p>Requires that every Transition was defined from a state instance via an event instance,
+   * and that all events are constants of the same enum. Transitions with a guard are evaluated
+   * the same way {@link #INDEXED} would evaluate them.
+   */
+  DENSE
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import com.digitalpetri.fsm.FsmContext;
+
+/**
+ * Resolves the state an FSM transitions to when an event is evaluated.
+ *
+ * @param <S> state type
+ * @param <E> event type
+ */
+@FunctionalInterface
+public interface TransitionResolver<S, E> {
+
+  /**
+   * Resolve the target of the first {@link Transition} that matches {@code state} and
+   * {@code event}.
+   *
+   * @param ctx the {@link FsmContext}.
+   * @param state the current FSM state.
+   * @param event the event being evaluated.
+   * @return the target of the first matching {@link Transition}, or {@code state} if no
+   *     Transition matches.
+   */
+  S resolve(FsmContext<S, E> ctx, S state, E event);
+
+}
@@ -10,7 +10,6 @@
 
 package com.digitalpetri.fsm.dsl;
 
-import java.util.Objects;
 import java.util.function.Predicate;
 
 class Transitions {
@@ -24,8 +23,8 @@ class Transitions {
   ) {
 
     return new PredicatedTransition<>(
-        s -> Objects.equals(s, state),
-        e -> Objects.equals(e.getClass(), event),
+        Predicates.isEqual(state),
+        Predicates.isClass(event),
         target
     );
   }
@@ -37,7 +36,7 @@ class Transitions {
   ) {
 
     return new PredicatedTransition<>(
-        s -> Objects.equals(s, state),
+        Predicates.isEqual(state),
         via,
         target
     );
@@ -50,8 +49,8 @@ class Transitions {
   ) {
 
     return new PredicatedTransition<>(
-        s -> Objects.equals(s, state),
-        e -> Objects.equals(e, event),
+        Predicates.isEqual(state),
+        Predicates.isEqual(event),
         target
     );
   }
@@ -11,7 +11,6 @@
 package com.digitalpetri.fsm.dsl;
 
 import java.util.LinkedList;
-import java.util.Objects;
 import java.util.function.Predicate;
 
 public class ViaBuilder<S, E> {
@@ -19,24 +18,28 @@ public class ViaBuilder<S, E> {
   private final Predicate<S> fromFilter;
   private final Predicate<S> toFilter;
   private final LinkedList<TransitionAction<S, E>> transitionActions;
+  private final Runnable onChange;
 
   ViaBuilder(
       Predicate<S> fromFilter,
       Predicate<S> toFilter,
-      LinkedList<TransitionAction<S, E>> transitionActions
+      LinkedList<TransitionAction<S, E>> transitionActions,
+      Runnable onChange
   ) {
 
     this.fromFilter = fromFilter;
     this.toFilter = toFilter;
     this.transitionActions = transitionActions;
+    this.onChange = onChange;
   }
 
   public ActionBuilder<S, E> via(E event) {
     return new ActionBuilder<>(
         fromFilter,
         toFilter,
-        e -> Objects.equals(e, event),
-        transitionActions
+        Predicates.isEqual(event),
+        transitionActions,
+        onChange
     );
   }
 
@@ -44,8 +47,9 @@ public class ViaBuilder<S, E> {
     return new ActionBuilder<>(
         fromFilter,
         toFilter,
-        e -> Objects.equals(e.getClass(), eventClass),
-        transitionActions
+        Predicates.isClass(eventClass),
+        transitionActions,
+        onChange
     );
   }
 
@@ -54,7 +58,8 @@ public class ViaBuilder<S, E> {
         fromFilter,
         toFilter,
         eventFilter,
-        transitionActions
+        transitionActions,
+        onChange
     );
   }
 
@@ -62,8 +67,9 @@ public class ViaBuilder<S, E> {
     return new ActionBuilder<>(
         fromFilter,
         toFilter,
-        e -> true,
-        transitionActions
+        Predicates.any(),
+        transitionActions,
+        onChange
     );
   }
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads, available when running on Java 21 or later.
+ *
+ * <p>This is the Java 21 implementation, packaged under {@code META-INF/versions/21} of the
+ * multi-release JAR.
+ */
+public final class VirtualThreads {
+
+  private static final ThreadFactory THREAD_FACTORY =
+      Thread.ofVirtual().name("strict-machine-virtual-", 0).factory();
+
+  private static final Executor EXECUTOR = command -> THREAD_FACTORY.newThread(command).start();
+
+  private VirtualThreads() {}
+
+  /**
+   * Check whether virtual threads are supported on the current runtime.
+   *
+   * @return {@code true} if virtual threads are supported on the current runtime.
+   */
+  public static boolean isSupported() {
+    return true;
+  }
+
+  /**
+   * Get an {@link Executor} that runs each task on a new virtual thread.
+   *
+   * <p>A {@link StrictMachine} using this executor keeps the virtual thread its task started on
+   * until it runs out of events to evaluate, rather than resubmitting its task, and so a new
+   * thread, for each event. Each machine thus runs on a virtual thread of its own while it's busy,
+   * and blocking actions park that virtual thread rather than a platform thread.
+   *
+   * @return an {@link Executor} that runs each task on a new virtual thread.
+   */
+  public static Executor executor() {
+    return EXECUTOR;
+  }
+
+  /**
+   * Check whether {@code executor} is the one returned by {@link #executor()}, whose tasks each
+   * have a thread to themselves.
+   *
+   * @param executor the {@link Executor} to check.
+   * @return {@code true} if {@code executor} is the virtual thread executor.
+   */
+  static boolean isExecutor(Executor executor) {
+    return executor == EXECUTOR;
+  }
+
+}
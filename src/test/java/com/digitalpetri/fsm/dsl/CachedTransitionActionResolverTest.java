@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Test;
+
+class CachedTransitionActionResolverTest {
+
+  @Test
+  void staticActionsAreCached() {
+    var fb = new FsmBuilder<State, Event>();
+    var fromTested = new AtomicInteger(0);
+
+    Predicate<State> fromFilter = s -> {
+      fromTested.incrementAndGet();
+      return s == State.S1;
+    };
+
+    fb.onTransitionFrom(fromFilter)
+        .to(State.S2)
+        .via(Event.E1.class)
+        .execute(ctx -> {});
+
+    var resolver = fb.compileTransitionActions(State.class);
+
+    assertEquals(1, resolver.resolve(State.S1, State.S2, new Event.E1()).size());
+    assertEquals(1, resolver.resolve(State.S1, State.S2, new Event.E1()).size());
+    assertEquals(0, resolver.resolve(State.S1, State.S2, new Event.E2()).size());
+    assertEquals(0, resolver.resolve(State.S1, State.S2, new Event.E2()).size());
+
+    assertEquals(2, fromTested.get());
+  }
+
+  @Test
+  void dynamicActionsAreRetested() {
+    var fb = new FsmBuilder<State, Event>();
+    var matches = new AtomicBoolean(false);
+    var recorded = new ArrayList<String>();
+
+    fb.onInternalTransition(State.S1)
+        .via(Event.E1.INSTANCE)
+        .execute(ctx -> recorded.add("instance"));
+
+    fb.onInternalTransition(State.S1)
+        .via(e -> matches.get())
+        .execute(ctx -> recorded.add("dynamic"));
+
+    fb.onInternalTransition(State.S1)
+        .viaAny()
+        .execute(ctx -> recorded.add("any"));
+
+    var resolver = fb.compileTransitionActions(State.class);
+
+    resolver.resolve(State.S1, State.S1, Event.E1.INSTANCE).forEach(a -> a.execute(null));
+    assertEquals(List.of("instance", "any"), recorded);
+
+    recorded.clear();
+    matches.set(true);
+
+    resolver.resolve(State.S1, State.S1, Event.E1.INSTANCE).forEach(a -> a.execute(null));
+    assertEquals(List.of("instance", "dynamic", "any"), recorded);
+  }
+
+  @Test
+  void orderingIsPreserved() {
+    var fb = new FsmBuilder<State, Event>();
+    var recorded = new ArrayList<Integer>();
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> recorded.add(2))
+        .executeLast(ctx -> recorded.add(3))
+        .executeFirst(ctx -> recorded.add(1));
+
+    var resolver = fb.compileTransitionActions(State.class);
+
+    for (int i = 0; i < 2; i++) {
+      recorded.clear();
+      resolver.resolve(State.S1, State.S2, new Event.E1()).forEach(a -> a.execute(null));
+      assertEquals(List.of(1, 2, 3), recorded);
+    }
+  }
+
+  @Test
+  void cacheIsBounded() {
+    var fb = new FsmBuilder<State, Event>();
+
+    fb.onTransitionFrom(State.S1)
+        .toAny()
+        .via(Event.E1.class)
+        .execute(ctx -> {});
+
+    var resolver = new CachedTransitionActionResolver<>(
+        State.class,
+        List.copyOf(fb.compileTransitionActions(State.class).resolve(
+            State.S1, State.S2, new Event.E1())),
+        1
+    );
+
+    for (State to : State.values()) {
+      assertEquals(1, resolver.resolve(State.S1, to, new Event.E1()).size());
+      assertEquals(0, resolver.resolve(State.S2, to, new Event.E1()).size());
+    }
+
+    assertEquals(1, resolver.size());
+  }
+
+  @Test
+  void resolverSharedUntilActionsChange() {
+    var fb = new FsmBuilder<State, Event>();
+
+    fb.onInternalTransition(State.S1)
+        .via(Event.E1.class)
+        .execute(ctx -> {});
+
+    var resolver1 = fb.compileTransitionActions(State.class);
+    var resolver2 = fb.compileTransitionActions(State.class);
+    assertSame(resolver1, resolver2);
+
+    fb.onInternalTransition(State.S1)
+        .via(Event.E2.class)
+        .execute(ctx -> {});
+
+    var resolver3 = fb.compileTransitionActions(State.class);
+    assertNotSame(resolver1, resolver3);
+    assertEquals(1, resolver3.resolve(State.S1, State.S1, new Event.E2()).size());
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class DenseTransitionResolverTest {
+
+  enum Ev {
+    A, B, C
+  }
+
+  @Test
+  void autoSelectsDenseForEnumEvents() {
+    var fb = new FsmBuilder<State, Ev>();
+
+    fb.when(State.S1).on(Ev.A).transitionTo(State.S2);
+    fb.when(State.S2).on(Ev.B).transitionTo(State.S3);
+
+    assertInstanceOf(DenseTransitionResolver.class, fb.compileTransitions(State.class));
+
+    fb.when(State.S3).on(e -> e == Ev.C).transitionTo(State.S1);
+
+    assertInstanceOf(IndexedTransitionResolver.class, fb.compileTransitions(State.class));
+  }
+
+  @Test
+  void explicitDenseRequiresEnumEvents() {
+    var fb = new FsmBuilder<State, Event>();
+    fb.setTransitionEngine(TransitionEngine.DENSE);
+
+    fb.when(State.S1).on(Event.E1.class).transitionTo(State.S2);
+
+    assertThrows(IllegalStateException.class, () -> fb.build(State.S1));
+  }
+
+  @Test
+  void firstDefinitionWins() {
+    var fb = new FsmBuilder<State, Ev>();
+
+    fb.when(State.S1).on(Ev.A).transitionTo(State.S3);
+    fb.when(State.S1).on(Ev.A).transitionTo(State.S2);
+    fb.when(State.S2).on(Ev.B).transitionTo(State.S4);
+
+    TransitionResolver<State, Ev> resolver = fb.compileTransitions(State.class);
+
+    assertEquals(State.S3, resolver.resolve(null, State.S1, Ev.A));
+    assertEquals(State.S1, resolver.resolve(null, State.S1, Ev.B));
+    assertEquals(State.S4, resolver.resolve(null, State.S2, Ev.B));
+    assertEquals(State.S4, resolver.resolve(null, State.S4, Ev.C));
+  }
+
+  @Test
+  void guardedCellsFallBackToGuard() throws InterruptedException {
+    var fb = new FsmBuilder<State, Ev>();
+    var guardCondition = new AtomicBoolean(false);
+
+    fb.when(State.S1)
+        .on(Ev.A)
+        .transitionTo(State.S2)
+        .guardedBy(ctx -> guardCondition.get());
+
+    fb.when(State.S1).on(Ev.A).transitionTo(State.S3);
+    fb.when(State.S1).on(Ev.B).transitionTo(State.S4);
+
+    assertInstanceOf(DenseTransitionResolver.class, fb.compileTransitions(State.class));
+
+    var fsm = fb.build(State.S1);
+    assertEquals(State.S3, fsm.fireEventBlocking(Ev.A));
+
+    fsm = fb.build(State.S1);
+    guardCondition.set(true);
+    assertEquals(State.S2, fsm.fireEventBlocking(Ev.A));
+
+    fsm = fb.build(State.S1);
+    assertEquals(State.S4, fsm.fireEventBlocking(Ev.B));
+  }
+
+  @Test
+  void eventsFromMoreThanOneEnum() {
+    var fb = new FsmBuilder<State, Object>();
+
+    fb.when(State.S1).on(Ev.A).transitionTo(State.S2);
+    assertInstanceOf(DenseTransitionResolver.class, fb.compileTransitions(State.class));
+
+    fb.when(State.S1).on(State.S1).transitionTo(State.S2);
+    assertInstanceOf(IndexedTransitionResolver.class, fb.compileTransitions(State.class));
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.FsmContext;
+import com.digitalpetri.fsm.StateSnapshot;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Implementations of the interfaces that only implement the methods that have always been
+ * abstract must keep compiling and get working defaults for everything added since.
+ */
+class FsmDefaultMethodsTest {
+
+  @Test
+  void stateSnapshotDefaultsToUncountedState() {
+    var fsm = new SimpleFsm();
+    fsm.fireEvent(new Event.E1());
+
+    assertEquals(new StateSnapshot<>(State.S2, -1L), fsm.getStateSnapshot());
+  }
+
+  @Test
+  void fireEventsDefaultsToFireEvent() {
+    var fsm = new SimpleFsm();
+    var states = new ArrayList<State>();
+
+    fsm.fireEvents(List.of(), states::add);
+    fsm.fireEvents(List.of(new Event.E1(), new Event.E2()), states::add);
+    fsm.fireEvents(new Event.E1());
+
+    assertEquals(List.of(State.S1, State.S3), states);
+    assertEquals(State.S2, fsm.getState());
+  }
+
+  @Test
+  void readContextDefaultsToGetFromContext() {
+    var fsm = new SimpleFsm();
+    var count = new FsmContext.LongKey("count");
+    fsm.withContext(ctx -> count.set(ctx, 3L));
+    fsm.fireEvent(new Event.E2());
+
+    assertEquals(State.S3, fsm.readContext(ctx -> ctx.currentState()));
+    assertEquals(3L, fsm.readContext(count::get));
+  }
+
+  @Test
+  void primitiveContextValuesDefaultToBoxedValues() {
+    var context = new MapContext();
+    var count = new FsmContext.LongKey("count");
+    var flags = new FsmContext.IntKey("flags");
+
+    assertEquals(0L, count.get(context));
+    assertEquals(0, flags.get(context));
+
+    count.set(context, 41L);
+    assertEquals(42L, count.addAndGet(context, 1L));
+    assertTrue(count.compareAndSet(context, 42L, 7L));
+    assertFalse(count.compareAndSet(context, 42L, 8L));
+    assertEquals(7L, count.get(context));
+
+    flags.set(context, 1);
+    assertEquals(3, flags.addAndGet(context, 2));
+    assertTrue(flags.compareAndSet(context, 3, 5));
+    assertFalse(flags.compareAndSet(context, 3, 6));
+    assertEquals(5, flags.get(context));
+
+    // stored under keys that can't collide with a user's key of the same name
+    assertNull(context.get(new FsmContext.Key<>("count", Long.class)));
+    assertNull(context.get(new FsmContext.Key<>("flags", Integer.class)));
+  }
+
+  @Test
+  void fireEventAfterDefaultsToTryFireEvent() throws Exception {
+    var tried = new CountDownLatch(1);
+
+    var context = new MapContext() {
+      @Override
+      public boolean tryFireEvent(Event event) {
+        tried.countDown();
+        return false;
+      }
+    };
+
+    context.fireEventAfter(new Event.E1(), Duration.ofMillis(10));
+
+    assertTrue(tried.await(5, TimeUnit.SECONDS));
+    assertTrue(context.fired.isEmpty());
+  }
+
+  /**
+   * Evaluates events synchronously: E1 leads to S2, E2 to S3, and other events are ignored.
+   */
+  private static class SimpleFsm implements Fsm<State, Event> {
+
+    final MapContext context = new MapContext();
+
+    @Override
+    public State getState() {
+      return context.state;
+    }
+
+    @Override
+    public void fireEvent(Event event) {
+      fireEvent(event, null);
+    }
+
+    @Override
+    public synchronized void fireEvent(Event event, Consumer<State> stateConsumer) {
+      if (event instanceof Event.E1) {
+        context.state = State.S2;
+      } else if (event instanceof Event.E2) {
+        context.state = State.S3;
+      }
+
+      if (stateConsumer != null) {
+        stateConsumer.accept(context.state);
+      }
+    }
+
+    @Override
+    public State fireEventBlocking(Event event) {
+      var state = new State[1];
+      fireEvent(event, s -> state[0] = s);
+      return state[0];
+    }
+
+    @Override
+    public synchronized <T> T getFromContext(Function<FsmContext<State, Event>, T> get) {
+      return get.apply(context);
+    }
+
+    @Override
+    public synchronized void withContext(Consumer<FsmContext<State, Event>> contextConsumer) {
+      contextConsumer.accept(context);
+    }
+
+  }
+
+  private static class MapContext implements FsmContext<State, Event> {
+
+    final Map<FsmContext.Key<?>, Object> values = new HashMap<>();
+    final List<Event> fired = new ArrayList<>();
+
+    volatile State state = State.S1;
+
+    @Override
+    public State currentState() {
+      return state;
+    }
+
+    @Override
+    public void fireEvent(Event event) {
+      fired.add(event);
+    }
+
+    @Override
+    public void shelveEvent(Event event) {}
+
+    @Override
+    public void processShelvedEvents() {}
+
+    @Override
+    public Object get(FsmContext.Key<?> key) {
+      return values.get(key);
+    }
+
+    @Override
+    public Object remove(FsmContext.Key<?> key) {
+      return values.remove(key);
+    }
+
+    @Override
+    public void set(FsmContext.Key<?> key, Object value) {
+      values.put(key, value);
+    }
+
+    @Override
+    public Object getUserContext() {
+      return null;
+    }
+
+  }
+
+}
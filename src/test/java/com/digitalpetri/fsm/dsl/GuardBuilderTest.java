@@ -29,7 +29,7 @@ class GuardBuilderTest {
     );
 
     var actions = new LinkedList<TransitionAction<State, Event>>();
-    var guardBuilder = new GuardBuilder<>(transition, actions);
+    var guardBuilder = new GuardBuilder<>(transition, actions, () -> {});
     Predicate<FsmContext<State, Event>> guard = ctx -> true;
 
     guardBuilder.guardedBy(guard);
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.digitalpetri.fsm.HashedWheelTimer;
+import com.digitalpetri.fsm.Timeout;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class HashedWheelTimerTest {
+
+  @Test
+  void tasksRunAfterTheirDelay() throws Exception {
+    var timer = new HashedWheelTimer(Duration.ofMillis(1), 8);
+
+    // delays longer than one turn of the wheel wait out the remaining rounds
+    var latch = new CountDownLatch(3);
+    long start = System.nanoTime();
+    var elapsed = new ArrayList<Long>();
+
+    for (long delay : new long[] {5, 30, 60}) {
+      timer.newTimeout(
+          () -> {
+            synchronized (elapsed) {
+              elapsed.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            latch.countDown();
+          },
+          Duration.ofMillis(delay)
+      );
+    }
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(elapsed.get(0) >= 5);
+    assertTrue(elapsed.get(1) >= 30);
+    assertTrue(elapsed.get(2) >= 60);
+
+    timer.stop();
+  }
+
+  @Test
+  void cancelledTasksNeverRun() throws Exception {
+    var timer = new HashedWheelTimer(Duration.ofMillis(1), 8);
+    var ran = new AtomicInteger();
+
+    List<Timeout> timeouts = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      timeouts.add(timer.newTimeout(ran::incrementAndGet, Duration.ofMillis(20)));
+    }
+    for (int i = 0; i < 100; i += 2) {
+      assertTrue(timeouts.get(i).cancel());
+    }
+
+    var done = new CountDownLatch(1);
+    timer.newTimeout(done::countDown, Duration.ofMillis(50));
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    assertEquals(50, ran.get());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i % 2 == 0, timeouts.get(i).isCancelled());
+      assertEquals(i % 2 != 0, timeouts.get(i).isExpired());
+      assertFalse(timeouts.get(i).cancel());
+    }
+
+    timer.stop();
+  }
+
+  @Test
+  void stoppedTimerRejectsTasks() {
+    var timer = new HashedWheelTimer();
+    var ran = new AtomicInteger();
+
+    timer.newTimeout(ran::incrementAndGet, Duration.ofSeconds(1));
+    timer.stop();
+
+    assertThrows(
+        IllegalStateException.class,
+        () -> timer.newTimeout(ran::incrementAndGet, Duration.ZERO)
+    );
+    assertEquals(0, ran.get());
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.digitalpetri.fsm.FsmContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class IndexedTransitionResolverTest {
+
+  @Test
+  void firstMatchWinsAcrossTransitionKinds() {
+    var transitions = new ArrayList<Transition<State, Event>>();
+
+    transitions.add(
+        Transitions.fromInstanceViaDynamic(State.S1, e -> e == Event.E2.INSTANCE, State.S4));
+    transitions.add(Transitions.fromInstanceViaClass(State.S1, Event.E1.class, State.S2));
+    transitions.add(Transitions.fromInstanceViaInstance(State.S1, Event.E1.INSTANCE, State.S3));
+    transitions.add(Transitions.fromInstanceViaInstance(State.S1, Event.E2.INSTANCE, State.S2));
+    transitions.add(Transitions.fromInstanceViaInstance(State.S1, Event.E3.INSTANCE, State.S4));
+    transitions.add(Transitions.fromInstanceViaClass(State.S1, Event.E3.class, State.S2));
+    transitions.add(Transitions.fromInstanceViaDynamic(State.S1, e -> true, State.S3));
+
+    var resolver = IndexedTransitionResolver.compile(State.class, transitions);
+
+    // class-based Transition defined before the instance-based one
+    assertEquals(State.S2, resolver.resolve(null, State.S1, Event.E1.INSTANCE));
+    assertEquals(State.S2, resolver.resolve(null, State.S1, new Event.E1()));
+
+    // dynamic Transition defined before the instance-based one
+    assertEquals(State.S4, resolver.resolve(null, State.S1, Event.E2.INSTANCE));
+    assertEquals(State.S3, resolver.resolve(null, State.S1, new Event.E2()));
+
+    // instance-based Transition defined before the class-based one
+    assertEquals(State.S4, resolver.resolve(null, State.S1, Event.E3.INSTANCE));
+    assertEquals(State.S2, resolver.resolve(null, State.S1, new Event.E3()));
+
+    // only the trailing dynamic Transition matches
+    assertEquals(State.S3, resolver.resolve(null, State.S1, new Event.E4()));
+
+    // no Transitions leaving S2
+    assertEquals(State.S2, resolver.resolve(null, State.S2, Event.E1.INSTANCE));
+  }
+
+  @Test
+  void manuallyAddedTransitionsKeepTheirPosition() {
+    var transitions = new ArrayList<Transition<State, Event>>();
+
+    transitions.add(Transitions.fromInstanceViaClass(State.S1, Event.E1.class, State.S2));
+    transitions.add(new Transition<>() {
+      @Override
+      public State target() {
+        return State.S4;
+      }
+
+      @Override
+      public boolean matches(FsmContext<State, Event> ctx, State state, Event event) {
+        return true;
+      }
+    });
+    transitions.add(Transitions.fromInstanceViaClass(State.S2, Event.E1.class, State.S3));
+
+    var resolver = IndexedTransitionResolver.compile(State.class, transitions);
+
+    assertEquals(State.S2, resolver.resolve(null, State.S1, new Event.E1()));
+    assertEquals(State.S4, resolver.resolve(null, State.S1, new Event.E2()));
+    assertEquals(State.S4, resolver.resolve(null, State.S2, new Event.E1()));
+    assertEquals(State.S4, resolver.resolve(null, State.S3, new Event.E1()));
+  }
+
+  @Test
+  void onlyTransitionsLeavingCurrentStateAreEvaluated() {
+    var evaluated = new AtomicInteger(0);
+    var transitions = new ArrayList<Transition<State, Event>>();
+
+    for (State from : List.of(State.S2, State.S3, State.S4)) {
+      for (int i = 0; i < 100; i++) {
+        transitions.add(Transitions.fromInstanceViaDynamic(from, e -> {
+          evaluated.incrementAndGet();
+          return false;
+        }, State.S1));
+      }
+    }
+    transitions.add(Transitions.fromInstanceViaClass(State.S1, Event.E1.class, State.S2));
+
+    var resolver = IndexedTransitionResolver.compile(State.class, transitions);
+
+    assertEquals(State.S2, resolver.resolve(null, State.S1, new Event.E1()));
+    assertEquals(0, evaluated.get());
+  }
+
+}
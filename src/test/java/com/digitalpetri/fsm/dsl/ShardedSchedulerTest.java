@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.dsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.ShardedScheduler;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ShardedSchedulerTest {
+
+  @Test
+  void keysArePinnedToOneShard() {
+    var scheduler = new ShardedScheduler(4);
+    var executors = new HashSet<Object>();
+
+    for (long i = 0; i < 100; i++) {
+      assertSame(scheduler.executor(i), scheduler.executor(i));
+      executors.add(scheduler.executor(i));
+    }
+
+    assertEquals(4, executors.size());
+
+    scheduler.shutdown();
+  }
+
+  @Test
+  void machinesRunOnTheirShardThread() throws Exception {
+    var scheduler = new ShardedScheduler(4);
+
+    var fb = new FsmBuilder<State, Event>(
+        ShardedSchedulerTest.class.getName(),
+        Map.of(),
+        scheduler,
+        null
+    );
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> ctx.fireEvent(new Event.E2()));
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S1);
+
+    var machines = new ArrayList<Fsm<State, Event>>();
+    for (int i = 0; i < 16; i++) {
+      machines.add(fb.build(State.S1));
+    }
+
+    Map<Fsm<State, Event>, Set<Thread>> threads = new ConcurrentHashMap<>();
+
+    for (int i = 0; i < 100; i++) {
+      for (Fsm<State, Event> fsm : machines) {
+        fsm.fireEvent(
+            new Event.E1(),
+            s -> threads.computeIfAbsent(fsm, k -> new HashSet<>()).add(Thread.currentThread())
+        );
+      }
+    }
+
+    for (Fsm<State, Event> fsm : machines) {
+      fsm.fireEventBlocking(new Event.E2());
+      assertEquals(1, threads.get(fsm).size());
+    }
+
+    var shardThreads = new HashSet<Thread>();
+    threads.values().forEach(shardThreads::addAll);
+    assertTrue(shardThreads.size() > 1);
+
+    scheduler.shutdown();
+    assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void rejectsInvalidShardCount() {
+    assertThrows(IllegalArgumentException.class, () -> new ShardedScheduler(0));
+    assertThrows(IllegalArgumentException.class, () -> new ShardedScheduler(-1));
+  }
+
+}
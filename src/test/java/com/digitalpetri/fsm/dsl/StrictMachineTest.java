@@ -11,11 +11,45 @@
 package com.digitalpetri.fsm.dsl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import com.digitalpetri.fsm.EventBatching;
+import com.digitalpetri.fsm.EventQueueCapacity;
+import com.digitalpetri.fsm.Fsm;
 import com.digitalpetri.fsm.FsmContext;
+import com.digitalpetri.fsm.OverflowPolicy;
+import com.digitalpetri.fsm.ReadOnlyFsmContext;
+import com.digitalpetri.fsm.ShardedScheduler;
+import com.digitalpetri.fsm.StateSnapshot;
+import com.digitalpetri.fsm.VirtualThreads;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
 
 class StrictMachineTest {
@@ -88,4 +122,1906 @@ class StrictMachineTest {
     assertEquals(State.S4, fsm.fireEventBlocking(new Event.E3()));
   }
 
+  @Test
+  void eventBatching() throws InterruptedException {
+    var executor = Executors.newSingleThreadExecutor();
+    var tasksSubmitted = new AtomicInteger(0);
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        command -> {
+          tasksSubmitted.incrementAndGet();
+          executor.execute(command);
+        },
+        null
+    );
+    fb.setEventBatching(EventBatching.of(10));
+
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        });
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S3);
+
+    fb.when(State.S3)
+        .on(Event.E2.class)
+        .transitionTo(State.S2);
+
+    var fsm = fb.build(State.S1);
+    var states = Collections.synchronizedList(new ArrayList<State>());
+
+    fsm.fireEvent(new Event.E1(), states::add);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    for (int i = 0; i < 99; i++) {
+      fsm.fireEvent(new Event.E2(), states::add);
+    }
+
+    release.countDown();
+    assertEquals(State.S2, fsm.fireEventBlocking(new Event.E2()));
+
+    // 101 events drained 10 per task
+    assertEquals(11, tasksSubmitted.get());
+
+    var expected = new ArrayList<State>(List.of(State.S2));
+    for (int i = 0; i < 99; i++) {
+      expected.add(i % 2 == 0 ? State.S3 : State.S2);
+    }
+    assertEquals(expected, states);
+
+    executor.shutdown();
+  }
+
+  @Test
+  void eventBatchingNotifiesCallbacksWithoutTheLock() throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+    var other = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+    fb.setEventBatching(EventBatching.of(10));
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2);
+
+    var fsm = fb.build(State.S1);
+    var unlocked = new CompletableFuture<Boolean>();
+
+    fsm.fireEvent(new Event.E1(), s -> {
+      try {
+        // another thread can only take the write lock if the batch has released it
+        other.submit(() -> fsm.withContext(ctx -> {})).get(5, TimeUnit.SECONDS);
+        unlocked.complete(true);
+      } catch (Exception e) {
+        unlocked.completeExceptionally(e);
+      }
+    });
+
+    assertTrue(unlocked.get(10, TimeUnit.SECONDS));
+
+    other.shutdown();
+    executor.shutdown();
+  }
+
+  @Test
+  void eventBatchingNotifiesEachCallbackBeforeTheNextEvent() throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+    fb.setEventBatching(EventBatching.of(10));
+
+    var log = Collections.synchronizedList(new ArrayList<String>());
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          log.add("evaluated");
+        });
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S3)
+        .execute(ctx -> log.add("evaluated"));
+
+    fb.when(State.S3)
+        .on(Event.E2.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> log.add("evaluated"));
+
+    var fsm = fb.build(State.S1);
+
+    fsm.fireEvent(new Event.E1(), s -> log.add("notified " + s));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // queued behind E1 so they're drained in the same batch
+    for (int i = 0; i < 4; i++) {
+      fsm.fireEvent(new Event.E2(), s -> log.add("notified " + s));
+    }
+
+    release.countDown();
+    assertEquals(State.S3, fsm.fireEventBlocking(new Event.E2()));
+
+    var expected = new ArrayList<String>();
+    for (int i = 0; i < 5; i++) {
+      expected.add("evaluated");
+      expected.add("notified " + (i % 2 == 0 ? State.S2 : State.S3));
+    }
+    expected.add("evaluated");
+    assertEquals(expected, log);
+
+    executor.shutdown();
+  }
+
+  @Test
+  void concurrentProducersKeepPerProducerOrder() throws Exception {
+    var executor = Executors.newFixedThreadPool(4);
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2);
+
+    fb.when(State.S2)
+        .on(Event.E1.class)
+        .transitionTo(State.S1);
+
+    var fsm = fb.build(State.S1);
+
+    int producers = 4;
+    int eventsPerProducer = 10_000;
+    var received = new ArrayList<List<Integer>>();
+    var done = new CountDownLatch(producers * eventsPerProducer);
+    var start = new CountDownLatch(1);
+    var threads = new ArrayList<Thread>();
+
+    for (int p = 0; p < producers; p++) {
+      List<Integer> sequence = new ArrayList<>();
+      received.add(sequence);
+
+      var thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        for (int i = 0; i < eventsPerProducer; i++) {
+          int n = i;
+          fsm.fireEvent(new Event.E1(), s -> {
+            // callbacks never run concurrently, and each starts after the previous one ended
+            sequence.add(n);
+            done.countDown();
+          });
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // an even number of toggles in total
+    assertEquals(State.S1, fsm.getState());
+
+    for (List<Integer> sequence : received) {
+      assertEquals(eventsPerProducer, sequence.size());
+      for (int i = 0; i < eventsPerProducer; i++) {
+        assertEquals(i, sequence.get(i));
+      }
+    }
+
+    executor.shutdown();
+  }
+
+  @Test
+  void fireEventsKeepsBatchesContiguous() throws Exception {
+    var executor = Executors.newFixedThreadPool(4);
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+
+    var evaluated = new ArrayList<Event>();
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> evaluated.add(ctx.event()));
+
+    fb.when(State.S2)
+        .on(Event.E1.class)
+        .transitionTo(State.S1)
+        .execute(ctx -> evaluated.add(ctx.event()));
+
+    var fsm = fb.build(State.S1);
+
+    int producers = 4;
+    int batchesPerProducer = 1_000;
+    var batches = new IdentityHashMap<Event, List<Event>>();
+    var done = new CountDownLatch(producers * batchesPerProducer);
+    var threads = new ArrayList<Thread>();
+
+    for (int p = 0; p < producers; p++) {
+      var producerBatches = new ArrayList<List<Event>>();
+      for (int b = 0; b < batchesPerProducer; b++) {
+        var batch = new ArrayList<Event>();
+        for (int i = 0; i <= b % 7; i++) {
+          batch.add(new Event.E1());
+        }
+        producerBatches.add(batch);
+        batches.put(batch.get(0), batch);
+      }
+
+      threads.add(new Thread(() -> {
+        for (List<Event> batch : producerBatches) {
+          fsm.fireEvents(batch, s -> done.countDown());
+        }
+      }));
+    }
+
+    threads.forEach(Thread::start);
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+
+    int i = 0;
+    while (i < evaluated.size()) {
+      List<Event> batch = batches.get(evaluated.get(i));
+      assertEquals(batch, evaluated.subList(i, i + batch.size()));
+      i += batch.size();
+    }
+
+    assertEquals(State.S2, fsm.fireEventsAsync(List.of(new Event.E1()))
+        .toCompletableFuture().get(5, TimeUnit.SECONDS));
+    assertEquals(State.S2, fsm.fireEventsAsync(List.of())
+        .toCompletableFuture().get(5, TimeUnit.SECONDS));
+
+    fsm.fireEvents(new Event.E1(), new Event.E1(), new Event.E1());
+    assertEquals(State.S1, fsm.fireEventBlocking(new Event.E2()));
+
+    executor.shutdown();
+  }
+
+  @Test
+  void boundedEventQueueOverflowPolicies() throws Exception {
+    var executor = Executors.newCachedThreadPool();
+    var evaluated = Collections.synchronizedList(new ArrayList<Event>());
+    var e = new Event[5];
+
+    // REJECT
+    var release = new CountDownLatch(1);
+    var fsm = stalledMachine(executor, OverflowPolicy.REJECT, release, evaluated);
+    Arrays.setAll(e, i -> new Event.E2());
+    assertTrue(fsm.tryFireEvent(e[0]));
+    final var accepted1 = fsm.fireEventAsync(e[1]).toCompletableFuture();
+    assertFalse(fsm.tryFireEvent(e[2]));
+    assertThrows(IllegalStateException.class, () -> fsm.fireEvent(e[3]));
+    release.countDown();
+    accepted1.get(5, TimeUnit.SECONDS);
+    fsm.fireEventBlocking(e[4]);
+    assertEquals(List.of(e[0], e[1], e[4]), evaluated);
+
+    // DROP_NEWEST
+    evaluated.clear();
+    release = new CountDownLatch(1);
+    var dropNewest = stalledMachine(executor, OverflowPolicy.DROP_NEWEST, release, evaluated);
+    Arrays.setAll(e, i -> new Event.E2());
+    dropNewest.fireEvent(e[0]);
+    final var accepted2 = dropNewest.fireEventAsync(e[1]).toCompletableFuture();
+    var dropped = dropNewest.fireEventAsync(e[2]).toCompletableFuture();
+    assertFalse(dropNewest.tryFireEvent(e[3]));
+    assertTrue(dropped.isCancelled());
+    assertThrows(CancellationException.class, () -> dropNewest.fireEventBlocking(new Event.E2()));
+    release.countDown();
+    accepted2.get(5, TimeUnit.SECONDS);
+    dropNewest.fireEventBlocking(e[4]);
+    assertEquals(List.of(e[0], e[1], e[4]), evaluated);
+
+    // DROP_OLDEST
+    evaluated.clear();
+    release = new CountDownLatch(1);
+    var dropOldest = stalledMachine(executor, OverflowPolicy.DROP_OLDEST, release, evaluated);
+    Arrays.setAll(e, i -> new Event.E2());
+    dropped = dropOldest.fireEventAsync(e[0]).toCompletableFuture();
+    dropOldest.fireEvent(e[1]);
+    final var accepted3 = dropOldest.fireEventAsync(e[2]).toCompletableFuture();
+    assertTrue(dropOldest.tryFireEvent(e[3]));
+    assertTrue(dropped.isCancelled());
+    release.countDown();
+    accepted3.get(5, TimeUnit.SECONDS);
+    dropOldest.fireEventBlocking(e[4]);
+    assertEquals(List.of(e[2], e[3], e[4]), evaluated);
+
+    // BLOCK
+    evaluated.clear();
+    release = new CountDownLatch(1);
+    var block = stalledMachine(executor, OverflowPolicy.BLOCK, release, evaluated);
+    Arrays.setAll(e, i -> new Event.E2());
+    block.fireEvent(e[0]);
+    block.fireEvent(e[1]);
+    assertFalse(block.tryFireEvent(e[2]));
+    var producer = new Thread(() -> block.fireEvent(e[3]));
+    producer.start();
+    producer.join(100);
+    assertTrue(producer.isAlive());
+    release.countDown();
+    producer.join(5000);
+    assertFalse(producer.isAlive());
+    // actions may exceed the capacity rather than wait for their own machine
+    block.fireEventBlocking(new Event.E3());
+    block.fireEventBlocking(e[4]);
+    assertEquals(7, evaluated.size());
+    assertEquals(List.of(e[0], e[1], e[3]), evaluated.subList(0, 3));
+    assertEquals(e[4], evaluated.get(6));
+
+    executor.shutdown();
+  }
+
+  @Test
+  void blockingQueueDoesNotBlockStateCallbacks() throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+    fb.setEventQueueCapacity(EventQueueCapacity.of(1, OverflowPolicy.BLOCK));
+
+    fb.when(State.S1)
+        .on(event -> true)
+        .transitionTo(State.S1);
+
+    var fsm = fb.build(State.S1);
+    var fired = new CountDownLatch(1);
+
+    // the callback runs on the machine's only thread, which must not wait for itself
+    fsm.fireEvent(new Event.E1(), s -> {
+      for (int i = 0; i < 3; i++) {
+        fsm.fireEvent(new Event.E2());
+      }
+      fired.countDown();
+    });
+
+    assertTrue(fired.await(5, TimeUnit.SECONDS));
+    assertEquals(State.S1, fsm.fireEventBlocking(new Event.E3()));
+
+    executor.shutdown();
+  }
+
+  @Test
+  void blockingQueueDoesNotBlockMachinesSharingAThread() throws Exception {
+    var scheduler = new ShardedScheduler(1);
+    var fired = new CountDownLatch(2);
+
+    var machines = new ArrayList<Fsm<State, Event>>();
+
+    for (int i = 0; i < 2; i++) {
+      final int peer = 1 - i;
+
+      var fb = new FsmBuilder<State, Event>(
+          StrictMachineTest.class.getName(),
+          Map.of(),
+          scheduler,
+          null
+      );
+      fb.setEventQueueCapacity(EventQueueCapacity.of(1, OverflowPolicy.BLOCK));
+
+      fb.when(State.S1)
+          .on(Event.E1.class)
+          .transitionTo(State.S1)
+          .execute(ctx -> {
+            for (int j = 0; j < 3; j++) {
+              machines.get(peer).fireEvent(new Event.E2());
+            }
+            fired.countDown();
+          });
+
+      fb.when(State.S1)
+          .on(Event.E2.class)
+          .transitionTo(State.S1);
+
+      machines.add(fb.build(State.S1));
+    }
+
+    machines.get(0).fireEvent(new Event.E1());
+    machines.get(1).fireEvent(new Event.E1());
+
+    // the peer's queue can only drain on the thread that's firing at it
+    assertTrue(fired.await(5, TimeUnit.SECONDS));
+    assertEquals(State.S1, machines.get(0).fireEventBlocking(new Event.E2()));
+    assertEquals(State.S1, machines.get(1).fireEventBlocking(new Event.E2()));
+
+    scheduler.shutdown();
+  }
+
+  @Test
+  void blockingQueueBlocksOtherMachines() throws Exception {
+    var consumerExecutor = Executors.newSingleThreadExecutor();
+    final var producerExecutor = Executors.newSingleThreadExecutor();
+
+    var cb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        consumerExecutor,
+        null
+    );
+    cb.setEventQueueCapacity(EventQueueCapacity.of(1, OverflowPolicy.BLOCK));
+
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+
+    cb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        });
+
+    cb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S2);
+
+    var consumer = cb.build(State.S1);
+
+    var pb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        producerExecutor,
+        null
+    );
+
+    var fired = new CountDownLatch(1);
+
+    pb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          for (int i = 0; i < 3; i++) {
+            consumer.fireEvent(new Event.E2());
+          }
+          fired.countDown();
+        });
+
+    var producer = pb.build(State.S1);
+
+    consumer.fireEvent(new Event.E1());
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // a machine on another thread gets the same backpressure as any other producer
+    producer.fireEvent(new Event.E1());
+    assertFalse(fired.await(200, TimeUnit.MILLISECONDS));
+
+    release.countDown();
+    assertTrue(fired.await(5, TimeUnit.SECONDS));
+    assertEquals(State.S2, consumer.fireEventBlocking(new Event.E2()));
+
+    producerExecutor.shutdown();
+    consumerExecutor.shutdown();
+  }
+
+  @Test
+  void coalescedEventsAreEvaluatedOnce() throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+    fb.setEventCoalescingKey(event -> event instanceof Event.E2 ? Event.E2.class : null);
+
+    var stalled = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var evaluated = Collections.synchronizedList(new ArrayList<Event>());
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          stalled.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        });
+
+    fb.when(State.S2)
+        .on(event -> true)
+        .transitionTo(State.S3)
+        .execute(ctx -> evaluated.add(ctx.event()));
+
+    fb.when(State.S3)
+        .on(event -> true)
+        .transitionTo(State.S2)
+        .execute(ctx -> evaluated.add(ctx.event()));
+
+    var fsm = fb.build(State.S1);
+    fsm.fireEvent(new Event.E1());
+    assertTrue(stalled.await(5, TimeUnit.SECONDS));
+
+    var first = new Event.E2();
+    var e3 = new Event.E3();
+    var last = new Event.E2();
+    var notified = new AtomicInteger();
+
+    final var firstCompletion = fsm.fireEventAsync(first).toCompletableFuture();
+    fsm.fireEvent(e3);
+    fsm.fireEvent(new Event.E2(), s -> notified.incrementAndGet());
+    fsm.fireEvent(new Event.E2(), s -> notified.incrementAndGet());
+    var lastCompletion = fsm.fireEventAsync(last).toCompletableFuture();
+
+    release.countDown();
+
+    // the last E2 replaced the first in its place ahead of E3
+    assertEquals(State.S3, firstCompletion.get(5, TimeUnit.SECONDS));
+    assertEquals(State.S3, lastCompletion.get(5, TimeUnit.SECONDS));
+    assertEquals(State.S3, fsm.fireEventBlocking(new Event.E4()));
+    assertEquals(2, notified.get());
+    assertEquals(List.of(last, e3), evaluated.subList(0, 2));
+    assertEquals(3, evaluated.size());
+
+    executor.shutdown();
+  }
+
+  @Test
+  void coalescedEventsAreNotLostWhenRejected() throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+    fb.setEventCoalescingKey(event -> event instanceof Event.E2 ? Event.E2.class : null);
+    fb.setEventQueueCapacity(EventQueueCapacity.of(1, OverflowPolicy.REJECT));
+
+    fb.when(State.S1)
+        .on(event -> true)
+        .transitionTo(State.S1);
+
+    var fsm = fb.build(State.S1);
+
+    var accepted = new AtomicInteger();
+    var notified = new AtomicInteger();
+    var producers = Executors.newFixedThreadPool(4);
+    var done = new ArrayList<Future<?>>();
+
+    for (int i = 0; i < 4; i++) {
+      boolean coalesced = i % 2 == 0;
+
+      done.add(producers.submit(() -> {
+        for (int j = 0; j < 20_000; j++) {
+          if (!coalesced) {
+            fsm.tryFireEvent(new Event.E3());
+            continue;
+          }
+          try {
+            // a merged producer must be notified unless its fireEvent throws
+            fsm.fireEvent(new Event.E2(), s -> notified.incrementAndGet());
+            accepted.incrementAndGet();
+          } catch (IllegalStateException rejected) {
+            // queue full
+          }
+        }
+      }));
+    }
+
+    for (var f : done) {
+      f.get(30, TimeUnit.SECONDS);
+    }
+
+    while (true) {
+      try {
+        fsm.fireEventBlocking(new Event.E4());
+        break;
+      } catch (IllegalStateException rejected) {
+        Thread.yield();
+      }
+    }
+
+    assertEquals(accepted.get(), notified.get());
+
+    producers.shutdown();
+    executor.shutdown();
+  }
+
+  @Test
+  void priorityLanes() throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+    fb.setPriorityLanes(2, event -> event instanceof Event.E4 ? 0 : 1);
+
+    var stalled = new AtomicReference<>(new CountDownLatch(1));
+    var release = new AtomicReference<>(new CountDownLatch(1));
+    var evaluated = Collections.synchronizedList(new ArrayList<Event>());
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S1)
+        .execute(ctx -> {
+          stalled.get().countDown();
+          try {
+            release.get().await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          ctx.processShelvedEvents();
+        });
+
+    fb.when(State.S1)
+        .on(event -> !(event instanceof Event.E1))
+        .transitionTo(State.S1)
+        .execute(ctx -> evaluated.add(ctx.event()));
+
+    var fsm = fb.build(State.S1);
+
+    fsm.fireEvent(new Event.E1());
+    assertTrue(stalled.get().await(5, TimeUnit.SECONDS));
+
+    var low = new Event[] {new Event.E2(), new Event.E2(), new Event.E2()};
+    var high = new Event[] {new Event.E4(), new Event.E4()};
+    fsm.fireEvent(low[0]);
+    fsm.fireEvent(low[1]);
+    fsm.fireEvent(high[0]);
+    fsm.fireEvent(low[2]);
+    fsm.fireEvent(high[1]);
+
+    release.get().countDown();
+    fsm.fireEventBlocking(new Event.E3());
+
+    assertEquals(List.of(high[0], high[1], low[0], low[1], low[2]), evaluated.subList(0, 5));
+
+    // shelved events are re-injected ahead of the queued events in their own lane
+    evaluated.clear();
+    stalled.set(new CountDownLatch(1));
+    release.set(new CountDownLatch(1));
+
+    var shelvedLow = new Event.E2();
+    var shelvedHigh = new Event.E4();
+    fsm.withContext(ctx -> {
+      ctx.shelveEvent(shelvedLow);
+      ctx.shelveEvent(shelvedHigh);
+    });
+
+    fsm.fireEvent(new Event.E1());
+    assertTrue(stalled.get().await(5, TimeUnit.SECONDS));
+
+    var queuedLow = new Event.E2();
+    var queuedHigh = new Event.E4();
+    fsm.fireEvent(queuedLow);
+    fsm.fireEvent(queuedHigh);
+
+    release.get().countDown();
+    fsm.fireEventBlocking(new Event.E3());
+
+    assertEquals(List.of(shelvedHigh, queuedHigh, shelvedLow, queuedLow), evaluated.subList(0, 4));
+
+    executor.shutdown();
+  }
+
+  @Test
+  void priorityLanesShareEventQueueCapacity() throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+    fb.setPriorityLanes(2, event -> event instanceof Event.E4 ? 0 : 1);
+    fb.setEventQueueCapacity(EventQueueCapacity.of(2, OverflowPolicy.DROP_OLDEST));
+
+    var stalled = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var evaluated = Collections.synchronizedList(new ArrayList<Event>());
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S1)
+        .execute(ctx -> {
+          stalled.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        });
+
+    fb.when(State.S1)
+        .on(event -> !(event instanceof Event.E1))
+        .transitionTo(State.S1)
+        .execute(ctx -> evaluated.add(ctx.event()));
+
+    var fsm = fb.build(State.S1);
+
+    fsm.fireEvent(new Event.E1());
+    assertTrue(stalled.await(5, TimeUnit.SECONDS));
+
+    var high = new Event[] {new Event.E4(), new Event.E4()};
+    var dropped = fsm.fireEventAsync(new Event.E2()).toCompletableFuture();
+    fsm.fireEvent(high[0]);
+    var last = fsm.fireEventAsync(high[1]).toCompletableFuture();
+
+    // the lanes share the capacity, and the lowest priority lane gives up its oldest event first
+    assertTrue(dropped.isCancelled());
+
+    release.countDown();
+    last.get(5, TimeUnit.SECONDS);
+
+    assertEquals(List.of(high[0], high[1]), evaluated);
+
+    executor.shutdown();
+  }
+
+  /**
+   * Build a machine with an event queue capacity of 2 whose thread is stalled in an action until
+   * {@code release} is counted down. Every E2 evaluated after that is added to
+   * {@code evaluated}, and an E3 fires three E2s from an action.
+   */
+  private static Fsm<State, Event> stalledMachine(
+      Executor executor,
+      OverflowPolicy overflowPolicy,
+      CountDownLatch release,
+      List<Event> evaluated
+  ) throws InterruptedException {
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+    fb.setEventQueueCapacity(EventQueueCapacity.of(2, overflowPolicy));
+
+    var stalled = new CountDownLatch(1);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          stalled.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        });
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> evaluated.add(ctx.event()));
+
+    fb.when(State.S2)
+        .on(Event.E3.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          for (int i = 0; i < 3; i++) {
+            ctx.fireEvent(new Event.E2());
+          }
+        });
+
+    var fsm = fb.build(State.S1);
+    fsm.fireEvent(new Event.E1());
+    assertTrue(stalled.await(5, TimeUnit.SECONDS));
+
+    return fsm;
+  }
+
+  @Test
+  void virtualThreadExecutionMode() throws InterruptedException {
+    var fb = new FsmBuilder<State, Event>();
+    fb.setExecutionMode(ExecutionMode.VIRTUAL_THREAD);
+
+    var threadNames = Collections.synchronizedList(new ArrayList<String>());
+    var evaluated = new CountDownLatch(4);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          threadNames.add(Thread.currentThread().getName());
+          if (threadNames.size() == 1) {
+            // queued while the first event is evaluated; all should run on its thread
+            for (int i = 0; i < 3; i++) {
+              ctx.fireEvent(new Event.E1());
+            }
+          }
+          evaluated.countDown();
+        });
+
+    fb.when(State.S2)
+        .on(Event.E1.class)
+        .transitionTo(State.S1)
+        .execute(ctx -> {
+          threadNames.add(Thread.currentThread().getName());
+          evaluated.countDown();
+        });
+
+    if (VirtualThreads.isSupported()) {
+      var fsm = fb.build(State.S1);
+      fsm.fireEvent(new Event.E1());
+
+      assertTrue(evaluated.await(5, TimeUnit.SECONDS));
+      assertEquals(State.S1, fsm.getState());
+      assertTrue(threadNames.get(0).startsWith("strict-machine-virtual-"), threadNames.get(0));
+      assertEquals(List.of(threadNames.get(0)), List.copyOf(new LinkedHashSet<>(threadNames)));
+    } else {
+      assertThrows(UnsupportedOperationException.class, () -> fb.build(State.S1));
+    }
+  }
+
+  @Test
+  void fireEventAsync() throws Exception {
+    var fb = new FsmBuilder<State, Event>();
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2);
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S3);
+
+    var fsm = fb.build(State.S1);
+
+    State state = fsm.fireEventAsync(new Event.E1())
+        .thenCompose(s -> fsm.fireEventAsync(new Event.E2()))
+        .toCompletableFuture()
+        .get(5, TimeUnit.SECONDS);
+
+    assertEquals(State.S3, state);
+  }
+
+  @Test
+  void fireEventBlockingWithTimeout() throws Exception {
+    var fb = new FsmBuilder<State, Event>();
+
+    var release = new CountDownLatch(1);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        });
+
+    var fsm = fb.build(State.S1);
+
+    assertThrows(
+        TimeoutException.class,
+        () -> fsm.fireEventBlocking(new Event.E1(), Duration.ofMillis(50))
+    );
+
+    release.countDown();
+
+    // the timed out event was still evaluated
+    assertEquals(State.S2, fsm.fireEventBlocking(new Event.E2(), Duration.ofSeconds(5)));
+  }
+
+  @Test
+  void steadyStateEvaluationDoesNotAllocate() {
+    var threadMxBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMxBean instanceof com.sun.management.ThreadMXBean);
+
+    var allocationMxBean = (com.sun.management.ThreadMXBean) threadMxBean;
+    assumeTrue(allocationMxBean.isThreadAllocatedMemorySupported());
+    allocationMxBean.setThreadAllocatedMemoryEnabled(true);
+
+    // evaluate on the calling thread so every allocation is attributed to it
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        Runnable::run,
+        null
+    );
+    fb.setActionProxy((ctx, action) -> action.execute(ctx));
+
+    var executions = new FsmContext.LongKey("executions");
+
+    fb.when(State.S1)
+        .on(Event.E1.INSTANCE)
+        .transitionTo(State.S2)
+        .execute(ctx -> executions.addAndGet(ctx, 1));
+
+    fb.when(State.S2)
+        .on(Event.E1.INSTANCE)
+        .transitionTo(State.S1)
+        .execute(ctx -> executions.addAndGet(ctx, 1));
+
+    var fsm = fb.build(State.S1);
+
+    for (int i = 0; i < 100_000; i++) {
+      fsm.fireEvent(Event.E1.INSTANCE);
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long before = allocationMxBean.getThreadAllocatedBytes(threadId);
+
+    int events = 100_000;
+    for (int i = 0; i < events; i++) {
+      fsm.fireEvent(Event.E1.INSTANCE);
+    }
+
+    long allocated = allocationMxBean.getThreadAllocatedBytes(threadId) - before;
+
+    assertEquals(200_000, fsm.readContext(executions::get));
+    // allow for the measurement itself; anything per event would be at least 16 bytes each
+    assertTrue(allocated < events, "allocated " + allocated + " bytes for " + events + " events");
+  }
+
+  @Test
+  void idleInstancesAreCompact() {
+    var threadMxBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMxBean instanceof com.sun.management.ThreadMXBean);
+
+    var allocationMxBean = (com.sun.management.ThreadMXBean) threadMxBean;
+    assumeTrue(allocationMxBean.isThreadAllocatedMemorySupported());
+    allocationMxBean.setThreadAllocatedMemoryEnabled(true);
+
+    // the target assumes compressed references; object sizes nearly double without them
+    var diagnosticMxBean = ManagementFactory.getPlatformMXBean(
+        com.sun.management.HotSpotDiagnosticMXBean.class);
+    assumeTrue(diagnosticMxBean != null);
+    assumeTrue("true".equals(diagnosticMxBean.getVMOption("UseCompressedOops").getValue()));
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        Runnable::run,
+        null
+    );
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2);
+
+    var definition = fb.buildDefinition(State.class);
+
+    var instances = new ArrayList<Fsm<State, Event>>(10_000);
+    for (int i = 0; i < 10_000; i++) {
+      instances.add(definition.newInstance(State.S1));
+    }
+    instances.clear();
+
+    // everything allocated for a new instance is retained until it's used
+    long threadId = Thread.currentThread().getId();
+    long before = allocationMxBean.getThreadAllocatedBytes(threadId);
+
+    for (int i = 0; i < 10_000; i++) {
+      instances.add(definition.newInstance(State.S1));
+    }
+
+    long perInstance = (allocationMxBean.getThreadAllocatedBytes(threadId) - before) / 10_000;
+
+    assertTrue(perInstance <= 256, "allocated " + perInstance + " bytes per idle instance");
+  }
+
+  @Test
+  void stateReadsDoNotWaitForActions() throws Exception {
+    var fb = new FsmBuilder<State, Event>();
+
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    final var key = new FsmContext.Key<>("key", String.class);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        });
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S2);
+
+    var fsm = fb.build(State.S1);
+    fsm.withContext(ctx -> key.set(ctx, "value"));
+
+    assertEquals(new StateSnapshot<>(State.S1, 0L), fsm.getStateSnapshot());
+
+    fsm.fireEvent(new Event.E1());
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // the action is still running and holds the write lock
+    assertEquals(State.S2, fsm.getState());
+    assertEquals(new StateSnapshot<>(State.S2, 1L), fsm.getStateSnapshot());
+
+    release.countDown();
+
+    // internal transitions advance the sequence too
+    fsm.fireEventBlocking(new Event.E2());
+    assertEquals(new StateSnapshot<>(State.S2, 2L), fsm.getStateSnapshot());
+    assertEquals("value", fsm.getFromContext(key::get));
+  }
+
+  @Test
+  void readContextReadersRunInParallel() throws Exception {
+    var fb = new FsmBuilder<State, Event>();
+    var fsm = fb.build(State.S1);
+
+    final var key = new FsmContext.Key<>("key", String.class);
+    fsm.withContext(ctx -> key.set(ctx, "value"));
+
+    var barrier = new CyclicBarrier(2);
+    var executor = Executors.newFixedThreadPool(2);
+
+    Callable<String> reader = () -> fsm.readContext(ctx -> {
+      try {
+        // both readers must be inside readContext at the same time to pass
+        barrier.await(5, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      return key.get(ctx);
+    });
+
+    var r1 = executor.submit(reader);
+    var r2 = executor.submit(reader);
+
+    assertEquals("value", r1.get(5, TimeUnit.SECONDS));
+    assertEquals("value", r2.get(5, TimeUnit.SECONDS));
+    assertEquals(State.S1, fsm.readContext(ReadOnlyFsmContext::currentState));
+
+    executor.shutdown();
+  }
+
+  @Test
+  void readContextRetriesUnderReadLockAfterConcurrentWrite() throws Exception {
+    var fb = new FsmBuilder<State, Event>();
+    var fsm = fb.build(State.S1);
+
+    final var key = new FsmContext.Key<>("key", String.class);
+    fsm.withContext(ctx -> key.set(ctx, "v1"));
+
+    var executor = Executors.newSingleThreadExecutor();
+    var calls = new AtomicInteger();
+
+    String value = fsm.readContext(ctx -> {
+      if (calls.getAndIncrement() == 0) {
+        try {
+          // a write while the first, optimistic, read is in progress
+          executor.submit(() -> fsm.withContext(c -> key.set(c, "v2")))
+              .get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return key.get(ctx);
+    });
+
+    assertEquals("v2", value);
+    assertEquals(2, calls.get());
+
+    executor.shutdown();
+  }
+
+  @Test
+  void registeredAndAdHocContextKeys() throws InterruptedException {
+    var registered = new FsmContext.Key<>("registered", Integer.class);
+    var adHoc = new FsmContext.Key<>("adHoc", Integer.class);
+
+    var fb = new FsmBuilder<State, Event>();
+    fb.registerContextKeys(registered);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          registered.set(ctx, registered.get(ctx) + 1);
+          adHoc.set(ctx, adHoc.get(ctx) + 1);
+        });
+
+    var fsm = fb.build(State.S1);
+
+    fsm.withContext(ctx -> {
+      registered.set(ctx, 1);
+      adHoc.set(ctx, 10);
+    });
+
+    fsm.fireEventBlocking(new Event.E1());
+
+    // an equal key constructed separately resolves to the same slot
+    var registeredCopy = new FsmContext.Key<>("registered", Integer.class);
+    assertEquals(2, fsm.readContext(registeredCopy::get));
+    assertEquals(11, fsm.readContext(adHoc::get));
+
+    assertEquals(2, fsm.getFromContext(registered::remove));
+    assertEquals(11, fsm.getFromContext(adHoc::remove));
+    assertNull(fsm.readContext(registered::get));
+    assertNull(fsm.readContext(adHoc::get));
+  }
+
+  @Test
+  void contextKeysSharedByDefinitionsWithDifferentLayouts() {
+    var a = new FsmContext.Key<>("a", String.class);
+    var b = new FsmContext.Key<>("b", String.class);
+    var count = new FsmContext.LongKey("count");
+
+    var fb1 = new FsmBuilder<State, Event>();
+    fb1.registerContextKeys(a, b);
+    fb1.registerContextKeys(count);
+    var fsm1 = fb1.build(State.S1);
+
+    // b gets slot 0 here, a has no slot, and count isn't stored in a primitive slot
+    var fb2 = new FsmBuilder<State, Event>();
+    fb2.registerContextKeys(b);
+    var fsm2 = fb2.build(State.S1);
+
+    for (int i = 0; i < 3; i++) {
+      String n = String.valueOf(i);
+      long c = i;
+
+      fsm1.withContext(ctx -> {
+        a.set(ctx, "a1-" + n);
+        b.set(ctx, "b1-" + n);
+        count.set(ctx, c);
+      });
+      fsm2.withContext(ctx -> {
+        a.set(ctx, "a2-" + n);
+        b.set(ctx, "b2-" + n);
+        count.set(ctx, c * 10);
+      });
+
+      assertEquals("a1-" + n, fsm1.readContext(a::get));
+      assertEquals("b1-" + n, fsm1.readContext(b::get));
+      assertEquals(c, fsm1.readContext(count::get));
+      assertEquals("a2-" + n, fsm2.readContext(a::get));
+      assertEquals("b2-" + n, fsm2.readContext(b::get));
+      assertEquals(c * 10, fsm2.readContext(count::get));
+    }
+  }
+
+  @Test
+  void primitiveContextKeys() throws InterruptedException {
+    var registeredLong = new FsmContext.LongKey("registeredLong");
+    var adHocLong = new FsmContext.LongKey("adHocLong");
+    var registeredInt = new FsmContext.IntKey("registeredInt");
+    var adHocInt = new FsmContext.IntKey("adHocInt");
+
+    var fb = new FsmBuilder<State, Event>();
+    fb.registerContextKeys(registeredLong);
+    fb.registerContextKeys(registeredInt);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S1)
+        .execute(ctx -> {
+          registeredLong.addAndGet(ctx, 1L << 32);
+          adHocLong.addAndGet(ctx, 2);
+          registeredInt.addAndGet(ctx, 3);
+          adHocInt.addAndGet(ctx, 4);
+        });
+
+    var fsm = fb.build(State.S1);
+
+    for (int i = 0; i < 10; i++) {
+      fsm.fireEvent(new Event.E1());
+    }
+    fsm.fireEventBlocking(new Event.E2());
+
+    assertEquals(10L << 32, fsm.readContext(registeredLong::get));
+    assertEquals(20L, fsm.readContext(adHocLong::get));
+    assertEquals(30, fsm.readContext(registeredInt::get));
+    assertEquals(40, fsm.readContext(adHocInt::get));
+
+    // values that were never set read as 0
+    var unset = new FsmContext.LongKey("unset");
+    assertEquals(0L, fsm.readContext(unset::get));
+
+    fsm.withContext(ctx -> {
+      assertTrue(adHocInt.compareAndSet(ctx, 40, 41));
+      assertFalse(adHocInt.compareAndSet(ctx, 40, 42));
+      assertTrue(registeredLong.compareAndSet(ctx, 10L << 32, -1L));
+      registeredInt.set(ctx, 7);
+    });
+
+    assertEquals(41, fsm.readContext(adHocInt::get));
+    assertEquals(-1L, fsm.readContext(registeredLong::get));
+    assertEquals(7, fsm.readContext(registeredInt::get));
+  }
+
+  @Test
+  void instancesShareDefinition() throws InterruptedException {
+    var key = new FsmContext.LongKey("count");
+    var allowed = new AtomicInteger(1);
+
+    var fb = new FsmBuilder<State, Event>();
+    fb.registerContextKeys(key);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .guardedBy(ctx -> allowed.get() > 0)
+        .execute(ctx -> key.addAndGet(ctx, 1));
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S1);
+
+    var definition = fb.buildDefinition(State.class);
+
+    // changing the builder afterward does not affect the compiled definition
+    fb.when(State.S1)
+        .on(Event.E2.class)
+        .transitionTo(State.S3);
+
+    var fsm1 = definition.newInstance(State.S1, "fsm1");
+    var fsm2 = definition.newInstance(State.S2, "fsm2");
+
+    assertEquals(State.S2, fsm1.fireEventBlocking(new Event.E1()));
+    assertEquals(State.S1, fsm2.fireEventBlocking(new Event.E2()));
+    assertEquals(State.S1, fsm2.fireEventBlocking(new Event.E2()));
+
+    allowed.set(0);
+    assertEquals(State.S1, fsm2.fireEventBlocking(new Event.E1()));
+
+    assertEquals(1L, fsm1.readContext(key::get));
+    assertEquals(0L, fsm2.readContext(key::get));
+    assertEquals("fsm1", fsm1.readContext(ReadOnlyFsmContext::getUserContext));
+    assertEquals("fsm2", fsm2.readContext(ReadOnlyFsmContext::getUserContext));
+  }
+
+  @Test
+  void definitionIsReusedUntilBuilderChanges() throws InterruptedException {
+    var fb = new FsmBuilder<State, Event>();
+
+    var transition = fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2);
+
+    var d1 = fb.buildDefinition(State.class);
+    assertSame(d1, fb.buildDefinition(State.class));
+
+    // guarding a transition that was already defined
+    transition.guardedBy(ctx -> false);
+    var d2 = fb.buildDefinition(State.class);
+    assertNotSame(d1, d2);
+    assertEquals(State.S2, d1.newInstance(State.S1).fireEventBlocking(new Event.E1()));
+    assertEquals(State.S1, d2.newInstance(State.S1).fireEventBlocking(new Event.E1()));
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S1);
+    var d3 = fb.buildDefinition(State.class);
+    assertNotSame(d2, d3);
+
+    fb.setEventBatching(EventBatching.of(10));
+    var d4 = fb.buildDefinition(State.class);
+    assertNotSame(d3, d4);
+    assertSame(d4, fb.buildDefinition(State.class));
+
+    // adding an action through a builder that was already used
+    var executed = new AtomicInteger();
+    var actions = fb.onTransitionTo(State.S1).fromAny().viaAny();
+    var d5 = fb.buildDefinition(State.class);
+    assertSame(d4, d5);
+
+    actions.execute(ctx -> executed.incrementAndGet());
+    var d6 = fb.buildDefinition(State.class);
+    assertNotSame(d5, d6);
+    assertSame(d6, fb.buildDefinition(State.class));
+
+    var fsm = d6.newInstance(State.S2);
+    assertEquals(State.S1, fsm.fireEventBlocking(new Event.E2()));
+    assertEquals(1, executed.get());
+  }
+
+  @Test
+  void stateTimeouts() throws Exception {
+    var timeoutEvent = new Event.E4();
+    var timedOut = new CountDownLatch(1);
+
+    var fb = new FsmBuilder<State, Event>();
+
+    fb.when(State.S1)
+        .timeout(Duration.ofMillis(50), timeoutEvent)
+        .transitionTo(State.S2)
+        .execute(ctx -> timedOut.countDown());
+
+    fb.when(State.S3)
+        .timeout(Duration.ofMillis(100), timeoutEvent)
+        .transitionTo(State.S4);
+
+    fb.when(State.S3)
+        .on(Event.E1.class)
+        .transitionTo(State.S1);
+
+    fb.when(State.S2)
+        .on(Event.E1.class)
+        .transitionTo(State.S3);
+
+    var fsm = fb.build(State.S1);
+
+    assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+    assertEquals(State.S2, fsm.getState());
+
+    // leaving S3 before its timeout elapses cancels it; S1's timeout is scheduled on entry
+    assertEquals(State.S3, fsm.fireEventBlocking(new Event.E1()));
+    assertEquals(State.S1, fsm.fireEventBlocking(new Event.E1()));
+
+    Thread.sleep(300);
+
+    assertEquals(State.S2, fsm.getState());
+    // the timeout event of S3 was never evaluated
+    assertEquals(4L, fsm.getStateSnapshot().sequence());
+  }
+
+  @Test
+  void stateTimeoutsAreNotLostToAFullQueue() throws Exception {
+    for (OverflowPolicy overflowPolicy : OverflowPolicy.values()) {
+      var fb = new FsmBuilder<State, Event>();
+      fb.setEventQueueCapacity(EventQueueCapacity.of(1, overflowPolicy));
+
+      var started = new CountDownLatch(1);
+      var release = new CountDownLatch(1);
+      var timedOut = new CountDownLatch(1);
+
+      fb.when(State.S1)
+          .on(Event.E1.class)
+          .transitionTo(State.S2)
+          .execute(ctx -> {
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+          });
+
+      fb.when(State.S2)
+          .timeout(Duration.ofMillis(50), new Event.E4())
+          .transitionTo(State.S3)
+          .execute(ctx -> timedOut.countDown());
+
+      fb.when(State.S2)
+          .on(Event.E2.class)
+          .transitionTo(State.S2);
+
+      var fsm = fb.build(State.S1);
+
+      fsm.fireEvent(new Event.E1());
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      assertTrue(fsm.tryFireEvent(new Event.E2()));
+
+      // the timeout elapses while the queue is full
+      Thread.sleep(200);
+
+      // with DROP_OLDEST, these displace the queued timeout event
+      fsm.tryFireEvent(new Event.E2());
+      fsm.tryFireEvent(new Event.E2());
+
+      release.countDown();
+
+      assertTrue(timedOut.await(5, TimeUnit.SECONDS), overflowPolicy.toString());
+      assertEquals(State.S3, fsm.getState());
+    }
+  }
+
+  @Test
+  void fireEventAfter() throws Exception {
+    var reachedS3 = new CountDownLatch(1);
+
+    var fb = new FsmBuilder<State, Event>();
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2);
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S3)
+        .execute(ctx -> reachedS3.countDown());
+
+    fb.when(State.S2)
+        .on(Event.E3.class)
+        .transitionTo(State.S4);
+
+    var fsm = fb.build(State.S1);
+
+    var cancelled = fsm.fireEventAfter(new Event.E3(), Duration.ofMillis(100));
+    assertTrue(cancelled.cancel());
+    assertTrue(cancelled.isCancelled());
+
+    var timeout = fsm.fireEventAfter(new Event.E2(), Duration.ofMillis(200));
+    fsm.withContext(ctx -> ctx.fireEventAfter(new Event.E1(), Duration.ofMillis(50)));
+
+    assertTrue(reachedS3.await(5, TimeUnit.SECONDS));
+    assertTrue(timeout.isExpired());
+    assertFalse(cancelled.isExpired());
+    assertFalse(cancelled.cancel());
+
+    Thread.sleep(200);
+
+    assertEquals(State.S3, fsm.getState());
+  }
+
+  @Test
+  void asyncActionsSuspendEvaluation() throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+
+    final var key = new FsmContext.Key<>("key", String.class);
+    var started = new CountDownLatch(1);
+    var stage = new CompletableFuture<Void>();
+    var executed = Collections.synchronizedList(new ArrayList<String>());
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .executeAsync(ctx -> {
+          executed.add("async");
+          started.countDown();
+          return stage;
+        })
+        .execute(ctx -> executed.add("after async"));
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S3)
+        .execute(ctx -> executed.add("E2"));
+
+    var fsm = fb.build(State.S1);
+    var other = fb.build(State.S2);
+
+    final CompletionStage<State> e1 = fsm.fireEventAsync(new Event.E1());
+    final CompletionStage<State> e2 = fsm.fireEventAsync(new Event.E2());
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // neither the lock nor the executor's only thread is held while suspended
+    fsm.withContext(ctx -> ctx.set(key, "value"));
+    assertEquals(State.S3, other.fireEventBlocking(new Event.E2()));
+    assertEquals(State.S2, fsm.getState());
+    assertFalse(e1.toCompletableFuture().isDone());
+    assertEquals(List.of("async", "E2"), executed);
+
+    executed.clear();
+    stage.complete(null);
+
+    assertEquals(State.S2, e1.toCompletableFuture().get(5, TimeUnit.SECONDS));
+    assertEquals(State.S3, e2.toCompletableFuture().get(5, TimeUnit.SECONDS));
+    assertEquals(List.of("after async", "E2"), executed);
+    assertEquals("value", fsm.getFromContext(key::get));
+
+    executor.shutdown();
+  }
+
+  @Test
+  void asyncActionContextIsUsableFromContinuations() throws Exception {
+    final var key = new FsmContext.Key<>("key", String.class);
+    var started = new CountDownLatch(1);
+    var stage = new CompletableFuture<Void>();
+    var continuationContext = new AtomicReference<ActionContext<State, Event>>();
+    var e1 = new Event.E1();
+
+    var fb = new FsmBuilder<State, Event>();
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .executeAsync(ctx -> {
+          started.countDown();
+
+          return stage.thenRun(() -> {
+            key.set(ctx, ctx.from() + " -> " + ctx.to());
+            continuationContext.set(ctx);
+          });
+        });
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S3)
+        .execute(ctx -> {});
+
+    var fsm = fb.build(State.S1);
+
+    final CompletionStage<State> transitioned = fsm.fireEventAsync(e1);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // the lock is released once evaluation has suspended
+    fsm.withContext(ctx -> {});
+    stage.complete(null);
+
+    assertEquals(State.S2, transitioned.toCompletableFuture().get(5, TimeUnit.SECONDS));
+    assertEquals("S1 -> S2", fsm.getFromContext(key::get));
+
+    // later events don't reuse the context the continuation held on to
+    assertEquals(State.S3, fsm.fireEventBlocking(new Event.E2()));
+    ActionContext<State, Event> ctx = continuationContext.get();
+    assertEquals(State.S1, ctx.from());
+    assertEquals(State.S2, ctx.to());
+    assertSame(e1, ctx.event());
+  }
+
+  @Test
+  void pipelinedActions() throws Exception {
+    var actionExecutor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>();
+    fb.setActionPipelining(actionExecutor);
+
+    var release = new CountDownLatch(1);
+    var executed = Collections.synchronizedList(new ArrayList<String>());
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .executePipelined(ctx -> {
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          executed.add("E1 " + ctx.from() + " -> " + ctx.to());
+        });
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S3)
+        .executePipelined(ctx -> executed.add("E2 " + ctx.from() + " -> " + ctx.to()));
+
+    var releaseOrdered = new CountDownLatch(1);
+
+    fb.when(State.S3)
+        .on(Event.E3.class)
+        .transitionTo(State.S4)
+        .execute(ctx -> {
+          try {
+            releaseOrdered.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          executed.add("E3");
+        });
+
+    fb.when(State.S4)
+        .on(Event.E4.class)
+        .transitionTo(State.S1);
+
+    var fsm = fb.build(State.S1);
+
+    // the next event is evaluated while the pipelined actions of the last are still executing
+    assertEquals(State.S2, fsm.fireEventBlocking(new Event.E1()));
+    assertEquals(State.S3, fsm.fireEventBlocking(new Event.E2()));
+    assertTrue(executed.isEmpty());
+
+    release.countDown();
+
+    // an action that isn't pipelined holds back the next event until it has executed
+    assertEquals(State.S4, fsm.fireEventBlocking(new Event.E3()));
+    var e4 = fsm.fireEventAsync(new Event.E4()).toCompletableFuture();
+    assertThrows(TimeoutException.class, () -> e4.get(100, TimeUnit.MILLISECONDS));
+
+    releaseOrdered.countDown();
+
+    assertEquals(State.S1, e4.get(5, TimeUnit.SECONDS));
+    assertEquals(List.of("E1 S1 -> S2", "E2 S2 -> S3", "E3"), executed);
+
+    actionExecutor.shutdown();
+  }
+
+  @Test
+  void pipelinedActionsNotifyCallbacksWithoutTheLock() throws Exception {
+    var actionExecutor = Executors.newSingleThreadExecutor();
+    var other = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>();
+    fb.setActionPipelining(actionExecutor);
+
+    var release = new CountDownLatch(1);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        });
+
+    var fsm = fb.build(State.S1);
+    var unlocked = new CompletableFuture<Boolean>();
+
+    fsm.fireEvent(new Event.E1(), s -> {
+      try {
+        // another thread can only take the write lock if it was released before this callback
+        other.submit(() -> fsm.withContext(ctx -> {})).get(5, TimeUnit.SECONDS);
+        unlocked.complete(true);
+      } catch (Exception e) {
+        unlocked.completeExceptionally(e);
+      }
+    });
+
+    assertTrue(unlocked.get(10, TimeUnit.SECONDS));
+    release.countDown();
+
+    other.shutdown();
+    actionExecutor.shutdown();
+  }
+
+  @Test
+  void pipelinedActionsDoNotBlockOnAFullQueue() throws Exception {
+    var actionExecutor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>();
+    fb.setActionPipelining(actionExecutor);
+    fb.setEventQueueCapacity(EventQueueCapacity.of(1, OverflowPolicy.BLOCK));
+
+    var fired = new CountDownLatch(1);
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(ctx -> {
+          // the machine waits for this action, so it can't make room until it's done
+          for (int i = 0; i < 3; i++) {
+            ctx.fireEvent(new Event.E2());
+          }
+          fired.countDown();
+        });
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S2);
+
+    var fsm = fb.build(State.S1);
+
+    fsm.fireEvent(new Event.E1());
+
+    assertTrue(fired.await(5, TimeUnit.SECONDS));
+    assertEquals(State.S2, fsm.fireEventBlocking(new Event.E3()));
+
+    actionExecutor.shutdown();
+  }
+
+  @Test
+  void parallelActions() throws Exception {
+    var executor = Executors.newFixedThreadPool(2);
+
+    var fb = new FsmBuilder<State, Event>();
+
+    var barrier = new CyclicBarrier(3);
+    var executed = Collections.synchronizedList(new ArrayList<String>());
+
+    Action<State, Event> independent = ctx -> {
+      try {
+        // only returns if all three execute concurrently
+        barrier.await(5, TimeUnit.SECONDS);
+        executed.add("parallel " + ctx.to());
+      } catch (Exception ex) {
+        executed.add("failed");
+      }
+    };
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .executeParallel(independent)
+        .executeParallel(independent, executor)
+        .executeParallel(independent, executor)
+        .executeLast(ctx -> executed.add("last"));
+
+    fb.onTransitionTo(State.S2)
+        .fromAny()
+        .viaAny()
+        .executeFirst(ctx -> executed.add("first"));
+
+    var fsm = fb.build(State.S1);
+
+    assertEquals(State.S2, fsm.fireEventBlocking(new Event.E1()));
+    assertEquals(
+        List.of("first", "parallel S2", "parallel S2", "parallel S2", "last"),
+        executed
+    );
+
+    executor.shutdown();
+  }
+
+  @Test
+  void parallelActionsDoNotBlockOnAFullQueue() throws Exception {
+    var parallelExecutor = Executors.newFixedThreadPool(2);
+
+    var fb = new FsmBuilder<State, Event>();
+    fb.setEventQueueCapacity(EventQueueCapacity.of(1, OverflowPolicy.BLOCK));
+
+    Action<State, Event> fireThree = ctx -> {
+      // the machine waits for this action, so it can't make room until it's done
+      for (int i = 0; i < 3; i++) {
+        ctx.fireEvent(new Event.E2());
+      }
+    };
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .executeParallel(fireThree, parallelExecutor)
+        .executeParallel(fireThree, parallelExecutor);
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S2);
+
+    var fsm = fb.build(State.S1);
+
+    assertEquals(State.S2, fsm.fireEventAsync(new Event.E1())
+        .toCompletableFuture().get(5, TimeUnit.SECONDS));
+    assertEquals(State.S2, fsm.fireEventBlocking(new Event.E3()));
+
+    parallelExecutor.shutdown();
+  }
+
+  @Test
+  void blockingActionsAreOffloaded() throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+    var blockingExecutor = Executors.newFixedThreadPool(1, r -> new Thread(r, "blocking"));
+
+    var fb = new FsmBuilder<State, Event>(
+        StrictMachineTest.class.getName(),
+        Map.of(),
+        executor,
+        null
+    );
+    fb.setBlockingActionExecutor(blockingExecutor);
+
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var executed = Collections.synchronizedList(new ArrayList<String>());
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(
+            ctx -> {
+              started.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+              executed.add(Thread.currentThread().getName() + " " + ctx.to());
+            },
+            ExecutionTag.BLOCKING
+        )
+        .execute(ctx -> executed.add("after"));
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S3)
+        .execute(ctx -> executed.add("E2"));
+
+    var fsm = fb.build(State.S1);
+    var other = fb.build(State.S2);
+
+    fsm.fireEvent(new Event.E1());
+    final var e2 = fsm.fireEventAsync(new Event.E2()).toCompletableFuture();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // the shared executor's only thread isn't held by the blocking action
+    assertEquals(State.S3, other.fireEventBlocking(new Event.E2()));
+    assertEquals(List.of("E2"), executed);
+    assertFalse(e2.isDone());
+
+    executed.clear();
+    release.countDown();
+
+    assertEquals(State.S3, e2.get(5, TimeUnit.SECONDS));
+    assertEquals(List.of("blocking S2", "after", "E2"), executed);
+
+    executor.shutdown();
+    blockingExecutor.shutdown();
+  }
+
+  @Test
+  void blockingActionsDoNotBlockOnAFullQueue() throws Exception {
+    var blockingExecutor = Executors.newSingleThreadExecutor();
+
+    var fb = new FsmBuilder<State, Event>();
+    fb.setBlockingActionExecutor(blockingExecutor);
+    fb.setEventQueueCapacity(EventQueueCapacity.of(1, OverflowPolicy.BLOCK));
+
+    fb.when(State.S1)
+        .on(Event.E1.class)
+        .transitionTo(State.S2)
+        .execute(
+            ctx -> {
+              // the machine waits for this action, so it can't make room until it's done
+              for (int i = 0; i < 3; i++) {
+                ctx.fireEvent(new Event.E2());
+              }
+            },
+            ExecutionTag.BLOCKING
+        );
+
+    fb.when(State.S2)
+        .on(Event.E2.class)
+        .transitionTo(State.S2);
+
+    var fsm = fb.build(State.S1);
+
+    assertEquals(State.S2, fsm.fireEventAsync(new Event.E1())
+        .toCompletableFuture().get(5, TimeUnit.SECONDS));
+    assertEquals(State.S2, fsm.fireEventBlocking(new Event.E3()));
+
+    blockingExecutor.shutdown();
+  }
+
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.benchmarks;
+
+import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchEvent;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchState;
+import com.digitalpetri.fsm.dsl.FsmBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of evaluating an event as the number of defined actions grows.
+ *
+ * <p>Half of the defined actions match the transition being benchmarked and are executed; the
+ * other half are defined for a different event and only need to be filtered out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionScalingBenchmark {
+
+  @Param({"1", "10", "100"})
+  public int actions;
+
+  private Fsm<BenchState, BenchEvent> fsm;
+  private long executed;
+
+  @Setup
+  public void setup() {
+    FsmBuilder<BenchState, BenchEvent> fb = Machines.builder(Machines.DIRECT);
+
+    fb.when(BenchState.A)
+        .on(BenchEvent.TICK)
+        .transitionTo(BenchState.A);
+
+    for (int i = 0; i < actions; i++) {
+      fb.onInternalTransition(BenchState.A)
+          .via(BenchEvent.TICK)
+          .execute(ctx -> executed++);
+
+      fb.onInternalTransition(BenchState.A)
+          .via(BenchEvent.OTHER)
+          .execute(ctx -> executed--);
+    }
+
+    fsm = fb.build(BenchState.A);
+  }
+
+  @Benchmark
+  public long evaluate() {
+    fsm.fireEvent(BenchEvent.TICK);
+
+    return executed;
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.benchmarks;
+
+import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.FsmContext;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchEvent;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchState;
+import com.digitalpetri.fsm.dsl.FsmBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of getting and setting {@link FsmContext.Key} values, both directly on an
+ * {@link FsmContext} and through {@link Fsm#getFromContext}, with the key registered for slot
+ * storage or not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextKeyBenchmark {
+
+  private static final FsmContext.Key<Long> KEY = new FsmContext.Key<>("counter", Long.class);
+
+  private Fsm<BenchState, BenchEvent> fsm;
+  private FsmContext<BenchState, BenchEvent> context;
+  private Long value = 42L;
+
+  @Param({"false", "true"})
+  public boolean registered;
+
+  @Setup
+  public void setup() {
+    FsmBuilder<BenchState, BenchEvent> fb = Machines.builder(Machines.DIRECT);
+
+    if (registered) {
+      fb.registerContextKeys(KEY);
+    }
+
+    fsm = fb.build(BenchState.A);
+    context = fsm.getFromContext(ctx -> ctx);
+
+    KEY.set(context, value);
+  }
+
+  @Benchmark
+  public Long keyGet() {
+    return KEY.get(context);
+  }
+
+  @Benchmark
+  public void keySet() {
+    KEY.set(context, value);
+  }
+
+  @Benchmark
+  public Long getFromContext() {
+    return fsm.getFromContext(KEY::get);
+  }
+
+}
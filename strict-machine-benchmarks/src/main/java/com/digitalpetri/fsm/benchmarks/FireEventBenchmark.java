@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.benchmarks;
+
+import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchEvent;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchState;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link Fsm#fireEvent(Object)} on a machine evaluated by a single-threaded
+ * executor, with one and with several producer threads.
+ *
+ * <p>Each invocation fires a batch of events and then waits for the last one to be evaluated, so
+ * the score reflects events evaluated per unit of time rather than how fast the queue grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FireEventBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  private ExecutorService executor;
+  private Fsm<BenchState, BenchEvent> fsm;
+
+  @Setup
+  public void setup() {
+    executor = Machines.newExecutor();
+    fsm = Machines.toggle(executor);
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    Machines.shutdown(executor);
+  }
+
+  @Benchmark
+  @Threads(1)
+  @OperationsPerInvocation(BATCH_SIZE)
+  public BenchState singleProducer() throws InterruptedException {
+    return fireBatch();
+  }
+
+  @Benchmark
+  @Threads(4)
+  @OperationsPerInvocation(BATCH_SIZE)
+  public BenchState multipleProducers() throws InterruptedException {
+    return fireBatch();
+  }
+
+  private BenchState fireBatch() throws InterruptedException {
+    for (int i = 0; i < BATCH_SIZE - 1; i++) {
+      fsm.fireEvent(BenchEvent.TOGGLE);
+    }
+
+    return fsm.fireEventBlocking(BenchEvent.TOGGLE);
+  }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.benchmarks;
+
+import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchEvent;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchState;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round-trip latency of {@link Fsm#fireEventBlocking(Object)}: enqueue, hand off to the executor,
+ * evaluate, and wake the caller.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FireEventBlockingBenchmark {
+
+  private ExecutorService executor;
+  private Fsm<BenchState, BenchEvent> fsm;
+
+  @Setup
+  public void setup() {
+    executor = Machines.newExecutor();
+    fsm = Machines.toggle(executor);
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    Machines.shutdown(executor);
+  }
+
+  @Benchmark
+  public BenchState fireEventBlocking() throws InterruptedException {
+    return fsm.fireEventBlocking(BenchEvent.TOGGLE);
+  }
+
+}
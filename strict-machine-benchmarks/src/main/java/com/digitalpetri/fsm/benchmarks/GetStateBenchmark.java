@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.benchmarks;
+
+import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchEvent;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchState;
+import com.digitalpetri.fsm.dsl.FsmBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of {@link Fsm#getState()} for readers racing a writer whose transitions execute an action
+ * that takes a while to complete.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetStateBenchmark {
+
+  private ExecutorService executor;
+  private Fsm<BenchState, BenchEvent> fsm;
+
+  @Setup
+  public void setup() {
+    executor = Machines.newExecutor();
+
+    FsmBuilder<BenchState, BenchEvent> fb = Machines.builder(executor);
+
+    fb.when(BenchState.A)
+        .on(BenchEvent.TOGGLE)
+        .transitionTo(BenchState.B)
+        .execute(ctx -> Blackhole.consumeCPU(1_000));
+
+    fb.when(BenchState.B)
+        .on(BenchEvent.TOGGLE)
+        .transitionTo(BenchState.A)
+        .execute(ctx -> Blackhole.consumeCPU(1_000));
+
+    fsm = fb.build(BenchState.A);
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    Machines.shutdown(executor);
+  }
+
+  @Benchmark
+  @Group("uncontended")
+  @GroupThreads(4)
+  public BenchState uncontendedGetState() {
+    return fsm.getState();
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(3)
+  public BenchState contendedGetState() {
+    return fsm.getState();
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public BenchState contendedWriter() throws InterruptedException {
+    return fsm.fireEventBlocking(BenchEvent.TOGGLE);
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.benchmarks;
+
+import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.dsl.FsmBuilder;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * States, events, and machine definitions shared by the benchmarks.
+ */
+final class Machines {
+
+  private Machines() {}
+
+  /**
+   * Executes tasks on the calling thread, so the cost of evaluating an event can be measured
+   * without the cost of handing it off to another thread.
+   */
+  static final Executor DIRECT = Runnable::run;
+
+  enum BenchState {
+    A, B
+  }
+
+  enum BenchEvent {
+    TOGGLE, TICK, OTHER
+  }
+
+  /**
+   * Build an {@link FsmBuilder} that evaluates events on {@code executor}.
+   */
+  static <E> FsmBuilder<BenchState, E> builder(Executor executor) {
+    return new FsmBuilder<>(Machines.class.getName(), Map.of(), executor, null);
+  }
+
+  /**
+   * Build a machine that moves between {@link BenchState#A} and {@link BenchState#B} on every
+   * {@link BenchEvent#TOGGLE}, with one action on each transition.
+   */
+  static Fsm<BenchState, BenchEvent> toggle(Executor executor) {
+    FsmBuilder<BenchState, BenchEvent> fb = builder(executor);
+
+    fb.when(BenchState.A)
+        .on(BenchEvent.TOGGLE)
+        .transitionTo(BenchState.B)
+        .execute(ctx -> {});
+
+    fb.when(BenchState.B)
+        .on(BenchEvent.TOGGLE)
+        .transitionTo(BenchState.A)
+        .execute(ctx -> {});
+
+    return fb.build(BenchState.A);
+  }
+
+  static void shutdown(ExecutorService executor) throws InterruptedException {
+    executor.shutdown();
+
+    if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+      executor.shutdownNow();
+    }
+  }
+
+  static ExecutorService newExecutor() {
+    return Executors.newSingleThreadExecutor();
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2024 Kevin Herron
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package com.digitalpetri.fsm.benchmarks;
+
+import com.digitalpetri.fsm.Fsm;
+import com.digitalpetri.fsm.benchmarks.Machines.BenchState;
+import com.digitalpetri.fsm.dsl.FsmBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of evaluating an event as the number of defined transitions grows.
+ *
+ * <p>Events are evaluated on the calling thread. The event fired matches the last transition
+ * defined, the worst case for a machine that scans its transitions in order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransitionScalingBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int transitions;
+
+  /**
+   * How transitions are defined: {@code instance} via {@code on(E)}, {@code predicate} via
+   * {@code on(Predicate)}.
+   */
+  @Param({"instance", "predicate"})
+  public String kind;
+
+  private Fsm<BenchState, Integer> fsm;
+  private Integer event;
+
+  @Setup
+  public void setup() {
+    FsmBuilder<BenchState, Integer> fb = Machines.builder(Machines.DIRECT);
+
+    for (int i = 0; i < transitions; i++) {
+      int value = i;
+
+      if ("instance".equals(kind)) {
+        fb.when(BenchState.A).on(value).transitionTo(BenchState.A);
+      } else {
+        fb.when(BenchState.A).on(e -> e == value).transitionTo(BenchState.A);
+      }
+    }
+
+    fsm = fb.build(BenchState.A);
+    event = transitions - 1;
+  }
+
+  @Benchmark
+  public BenchState evaluate() {
+    fsm.fireEvent(event);
+
+    return fsm.getState();
+  }
+
+}